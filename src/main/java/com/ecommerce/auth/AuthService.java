@@ -1,8 +1,6 @@
 package com.ecommerce.auth;
 
 import com.ecommerce.security.JwtTokenProvider;
-import com.ecommerce.shoppingcart.ShoppingCartEntity;
-import com.ecommerce.shoppingcart.ShoppingCartRepository;
 import com.ecommerce.users.Role;
 import com.ecommerce.users.UserEntity;
 import com.ecommerce.users.UserRepository;
@@ -31,8 +29,6 @@ public class AuthService {
 
   @Autowired private UserRepository userRepository;
 
-  @Autowired private ShoppingCartRepository cartRepository;
-
   public String authenticateUser(String email, String password) {
     log.debug("Attempting authentication for user: {}", email);
 
@@ -66,18 +62,8 @@ public class AuthService {
     UserEntity userEntity = new UserEntity(user);
     userEntity.setPassword(hashedPassword);
 
+    // The cart is created on the user's first add, see ShoppingCartService.addItemToUserCart
     UserEntity savedUser = userRepository.save(userEntity);
-
-    try {
-      ShoppingCartEntity cart = new ShoppingCartEntity();
-      cart.setUserId(savedUser.getId());
-      cartRepository.save(cart);
-    } catch (Exception e) {
-      userRepository.delete(savedUser);
-      throw new ResponseStatusException(
-          HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create shopping cart for user");
-    }
-
     return savedUser.toResponseDto();
   }
 }
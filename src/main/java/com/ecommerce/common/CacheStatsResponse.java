@@ -0,0 +1,23 @@
+package com.ecommerce.common;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.Data;
+
+@Data
+public class CacheStatsResponse {
+  private long size;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+  private double hitRate;
+
+  public static CacheStatsResponse from(CacheStats stats, long size) {
+    CacheStatsResponse response = new CacheStatsResponse();
+    response.setSize(size);
+    response.setHitCount(stats.hitCount());
+    response.setMissCount(stats.missCount());
+    response.setEvictionCount(stats.evictionCount());
+    response.setHitRate(stats.hitRate());
+    return response;
+  }
+}
@@ -0,0 +1,22 @@
+package com.ecommerce.common;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Prices are stored and summed as integer minor units (cents), the API keeps major units
+public final class Money {
+
+  private Money() {}
+
+  public static long toMinor(double amount) {
+    return toMinor(BigDecimal.valueOf(amount), RoundingMode.HALF_UP);
+  }
+
+  public static long toMinor(BigDecimal amount, RoundingMode rounding) {
+    return amount.movePointRight(2).setScale(0, rounding).longValueExact();
+  }
+
+  public static double toMajor(long minor) {
+    return BigDecimal.valueOf(minor, 2).doubleValue();
+  }
+}
@@ -2,14 +2,55 @@ package com.ecommerce.common;
 
 import java.util.List;
 import lombok.Data;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
 
 @Data
 public class PageResponse<T> {
   private List<T> content;
   private int pageNumber;
   private int pageSize;
-  private long totalElements;
-  private int totalPages;
+  // Not computed for slice and cursor pages
+  private Long totalElements;
+  private Integer totalPages;
   private boolean last;
   private boolean first;
+  private String nextCursor;
+
+  public static <T> PageResponse<T> from(Page<T> page) {
+    PageResponse<T> response = new PageResponse<>();
+    response.setContent(page.getContent());
+    response.setPageNumber(page.getNumber());
+    response.setPageSize(page.getSize());
+    response.setTotalElements(page.getTotalElements());
+    response.setTotalPages(page.getTotalPages());
+    response.setLast(page.isLast());
+    response.setFirst(page.isFirst());
+    return response;
+  }
+
+  public static <T> PageResponse<T> from(Slice<T> slice) {
+    PageResponse<T> response = new PageResponse<>();
+    response.setContent(slice.getContent());
+    response.setPageNumber(slice.getNumber());
+    response.setPageSize(slice.getSize());
+    response.setLast(slice.isLast());
+    response.setFirst(slice.isFirst());
+    return response;
+  }
+
+  public static <T> PageResponse<T> from(Window<T> window, int pageSize, boolean first) {
+    PageResponse<T> response = new PageResponse<>();
+    response.setContent(window.getContent());
+    response.setPageSize(pageSize);
+    response.setLast(!window.hasNext());
+    response.setFirst(first);
+    if (window.hasNext()) {
+      KeysetScrollPosition position = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+      response.setNextCursor(ScrollCursor.encode(position));
+    }
+    return response;
+  }
 }
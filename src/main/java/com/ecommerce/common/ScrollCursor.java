@@ -0,0 +1,47 @@
+package com.ecommerce.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+// Opaque token for keyset pagination, holds the sort key and id of the last returned document
+public final class ScrollCursor {
+
+  private ScrollCursor() {}
+
+  public static String encode(KeysetScrollPosition position) {
+    Document keys = new Document(position.getKeys());
+
+    // The keyset carries the entity's String id, but it is stored and compared as an ObjectId
+    keys.computeIfPresent(
+        "id",
+        (key, value) ->
+            value instanceof String id && ObjectId.isValid(id) ? new ObjectId(id) : value);
+
+    // Extended JSON keeps ObjectIds, dates and numbers as their BSON types
+    String json = keys.toJson();
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static KeysetScrollPosition decode(String cursor) {
+    if (!StringUtils.hasText(cursor)) {
+      return ScrollPosition.keyset();
+    }
+
+    try {
+      String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      return ScrollPosition.forward(Document.parse(json));
+    } catch (IllegalArgumentException | JsonParseException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.ecommerce.common;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+// Timestamps used to be written as Date.toString() strings, which neither sort nor range-query.
+// Converts what is left of them to BSON dates on startup, a no-op once everything is converted.
+@Slf4j
+@Component
+public class TimestampMigration {
+
+  private static final int BATCH_SIZE = 1000;
+  private static final int BSON_STRING = 2;
+
+  // Collection -> timestamp fields that were written as strings
+  private static final Map<String, String[]> FIELDS =
+      Map.of(
+          "products", new String[] {"createdAt", "updatedAt"},
+          "users", new String[] {"createdAt"},
+          "shopping_carts", new String[] {"createdAt"});
+
+  private static final DateTimeFormatter DATE_TO_STRING =
+      DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void migrate() {
+    FIELDS.forEach(
+        (collection, fields) -> {
+          for (String field : fields) {
+            migrate(collection, field);
+          }
+        });
+  }
+
+  private void migrate(String collection, String field) {
+    Query legacy = Query.query(where(field).type(BSON_STRING));
+    legacy.fields().include(field);
+
+    long migrated = 0;
+    BulkOperations bulk = null;
+    int pending = 0;
+    try (Stream<Document> documents = mongoTemplate.stream(legacy, Document.class, collection)) {
+      for (Document document : (Iterable<Document>) documents::iterator) {
+        if (bulk == null) {
+          bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+        }
+        bulk.updateOne(
+            Query.query(where("_id").is(document.get("_id"))),
+            new Update().set(field, toDate(document.getString(field), document.get("_id"))));
+        if (++pending == BATCH_SIZE) {
+          bulk.execute();
+          migrated += pending;
+          bulk = null;
+          pending = 0;
+        }
+      }
+    }
+    if (bulk != null) {
+      bulk.execute();
+      migrated += pending;
+    }
+    if (migrated > 0) {
+      log.info("Converted {} {}.{} values to dates", migrated, collection, field);
+    }
+  }
+
+  // Unreadable values fall back to the creation time in the ObjectId, then to now
+  private static Date toDate(String value, Object id) {
+    try {
+      return Date.from(ZonedDateTime.parse(value.trim(), DATE_TO_STRING).toInstant());
+    } catch (DateTimeParseException ex) {
+      return id instanceof ObjectId objectId ? objectId.getDate() : new Date();
+    }
+  }
+}
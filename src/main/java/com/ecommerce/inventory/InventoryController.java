@@ -0,0 +1,27 @@
+package com.ecommerce.inventory;
+
+import com.ecommerce.inventory.dto.StockLevelResponseDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/v1/ecommerce/inventory")
+@PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_STAFF')")
+public class InventoryController {
+
+  @Autowired private InventoryService inventoryService;
+
+  @GetMapping("/{productId}")
+  public ResponseEntity<StockLevelResponseDto> getStockLevel(@PathVariable String productId) {
+    return ResponseEntity.ok(inventoryService.getStockLevel(productId));
+  }
+
+  // Splits a hot product's stock over count shards for flash sales, 0 folds it back
+  @PutMapping("/{productId}/shards")
+  public ResponseEntity<StockLevelResponseDto> setStockShards(
+      @PathVariable String productId, @RequestParam int count) {
+    return ResponseEntity.ok(inventoryService.setStockShards(productId, count));
+  }
+}
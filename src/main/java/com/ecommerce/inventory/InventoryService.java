@@ -0,0 +1,372 @@
+package com.ecommerce.inventory;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.inventory.dto.StockLevelResponseDto;
+import com.ecommerce.product.ProductCache;
+import com.ecommerce.product.ProductEntity;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+// Every unit moves between a product's stockQuantity and a reservation through single document
+// conditional updates, so concurrent carts can never hold more than was in stock
+@Service
+public class InventoryService {
+
+  private static final int MAX_ADJUST_ATTEMPTS = 3;
+
+  // Tags the products a bulk take decremented until it knows which of them matched
+  private static final String PENDING_TAKES = "pendingTakes";
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private StockReservationRepository reservationRepository;
+
+  @Autowired private ProductCache productCache;
+
+  @Autowired private StockShardCounter stockShardCounter;
+
+  @Value("${app.inventory.reservation-ttl-seconds}")
+  private long reservationTtlSeconds;
+
+  @Value("${app.inventory.sweep-batch-size}")
+  private int sweepBatchSize;
+
+  public void reserve(String cartId, String productId, int quantity) {
+    requirePositive(quantity);
+    if (!takeStock(productId, quantity)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Insufficient stock quantity");
+    }
+
+    // Adding to a line tops up its hold and pushes the expiry out again
+    Update hold =
+        new Update()
+            .inc("quantity", quantity)
+            .set(
+                "expiresAt",
+                Date.from(Instant.now().plus(Duration.ofSeconds(reservationTtlSeconds))));
+    try {
+      mongoTemplate.upsert(holdQuery(cartId, productId), hold, StockReservationEntity.class);
+    } catch (RuntimeException ex) {
+      restock(Map.of(productId, quantity));
+      throw ex;
+    }
+  }
+
+  // Reserves several lines of one cart together, the stock takes go out as one bulk write and the
+  // holds as another. Nothing is held if any line is short.
+  public void reserveAll(String cartId, Map<String, Integer> quantities) {
+    quantities.values().forEach(InventoryService::requirePositive);
+    if (quantities.isEmpty()) {
+      return;
+    }
+
+    Map<String, Integer> taken = takeStockAll(quantities);
+    if (taken.size() < quantities.size()) {
+      restock(taken);
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Insufficient stock quantity");
+    }
+
+    Date expiresAt = Date.from(Instant.now().plus(Duration.ofSeconds(reservationTtlSeconds)));
+    BulkOperations holds =
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StockReservationEntity.class);
+    quantities.forEach(
+        (productId, quantity) ->
+            holds.upsert(
+                holdQuery(cartId, productId),
+                new Update().inc("quantity", quantity).set("expiresAt", expiresAt)));
+    try {
+      holds.execute();
+    } catch (RuntimeException ex) {
+      restock(quantities);
+      throw ex;
+    }
+  }
+
+  public void release(String cartId, String productId, int quantity) {
+    requirePositive(quantity);
+    // Shrink the hold while it is larger than the release, otherwise drop it with what it still has
+    Query partial = holdQuery(cartId, productId).addCriteria(where("quantity").gt(quantity));
+    StockReservationEntity shrunk =
+        mongoTemplate.findAndModify(
+            partial, new Update().inc("quantity", -quantity), StockReservationEntity.class);
+    if (shrunk != null) {
+      restock(Map.of(productId, quantity));
+      return;
+    }
+    releaseLine(cartId, productId);
+  }
+
+  public void releaseLine(String cartId, String productId) {
+    StockReservationEntity removed =
+        mongoTemplate.findAndRemove(holdQuery(cartId, productId), StockReservationEntity.class);
+    if (removed != null) {
+      restock(Map.of(productId, removed.getQuantity()));
+    }
+  }
+
+  // Moves the hold for a line to exactly quantity units. The hold only changes while it still has
+  // the quantity the difference was computed from, a concurrent change makes it start over.
+  public void adjust(String cartId, String productId, int quantity) {
+    requirePositive(quantity);
+    for (int attempt = 0; attempt < MAX_ADJUST_ATTEMPTS; attempt++) {
+      StockReservationEntity current =
+          mongoTemplate.findOne(holdQuery(cartId, productId), StockReservationEntity.class);
+      int held = current == null ? 0 : current.getQuantity();
+      int delta = quantity - held;
+      if (delta == 0) {
+        return;
+      }
+      if (delta > 0 && !takeStock(productId, delta)) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Insufficient stock quantity");
+      }
+
+      // A missing hold is matched as quantity 0 and inserted, the unique cart_product index
+      // rejects the insert if another request created it first
+      Query expected = holdQuery(cartId, productId).addCriteria(where("quantity").is(held));
+      Update hold =
+          new Update()
+              .set("quantity", quantity)
+              .set(
+                  "expiresAt",
+                  Date.from(Instant.now().plus(Duration.ofSeconds(reservationTtlSeconds))));
+      StockReservationEntity moved;
+      try {
+        moved =
+            mongoTemplate.findAndModify(
+                expected,
+                hold,
+                FindAndModifyOptions.options().upsert(held == 0).returnNew(true),
+                StockReservationEntity.class);
+      } catch (DuplicateKeyException ex) {
+        moved = null;
+      } catch (RuntimeException ex) {
+        if (delta > 0) {
+          restock(Map.of(productId, delta));
+        }
+        throw ex;
+      }
+
+      if (moved != null) {
+        if (delta < 0) {
+          restock(Map.of(productId, -delta));
+        }
+        return;
+      }
+      // The hold changed meanwhile, hand back what was taken for it and read it again
+      if (delta > 0) {
+        restock(Map.of(productId, delta));
+      }
+    }
+
+    throw new ResponseStatusException(
+        HttpStatus.CONFLICT, "Stock reservation was modified concurrently, please retry");
+  }
+
+  public void releaseCart(String cartId) {
+    releaseAll(reservationRepository.findByCartId(cartId), null);
+  }
+
+  @Scheduled(fixedDelayString = "${app.inventory.sweep-interval-ms}")
+  public void releaseExpiredReservations() {
+    Date now = new Date();
+    List<StockReservationEntity> expired;
+    do {
+      expired = reservationRepository.findByExpiresAtBefore(now, Limit.of(sweepBatchSize));
+      releaseAll(expired, now);
+    } while (expired.size() == sweepBatchSize);
+  }
+
+  private void releaseAll(List<StockReservationEntity> reservations, Date expiredBefore) {
+    // Each hold is claimed by removing it, a hold refreshed or released meanwhile is skipped
+    Map<String, Integer> released = new HashMap<>();
+    for (StockReservationEntity reservation : reservations) {
+      Query claim = Query.query(where("id").is(reservation.getId()));
+      if (expiredBefore != null) {
+        claim.addCriteria(where("expiresAt").lt(expiredBefore));
+      }
+      StockReservationEntity removed =
+          mongoTemplate.findAndRemove(claim, StockReservationEntity.class);
+      if (removed != null) {
+        released.merge(removed.getProductId(), removed.getQuantity(), Integer::sum);
+      }
+    }
+    restock(released);
+  }
+
+  public StockLevelResponseDto getStockLevel(String productId) {
+    ProductEntity product = findProduct(productId);
+    StockLevelResponseDto stockLevel = new StockLevelResponseDto();
+    stockLevel.setProductId(productId);
+    stockLevel.setStockShards(product.getStockShards());
+    stockLevel.setStockQuantity(
+        product.getStockShards() > 0
+            ? stockShardCounter.total(productId)
+            : product.getStockQuantity());
+    return stockLevel;
+  }
+
+  public StockLevelResponseDto setStockShards(String productId, int shards) {
+    if (shards < 0) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Shard count cannot be negative");
+    }
+    ProductEntity product = findProduct(productId);
+
+    // Changing the count goes through the unsharded state so no stock is left on a stray shard
+    if (product.getStockShards() > 0) {
+      stockShardCounter.disable(productId);
+    }
+    if (shards > 0) {
+      stockShardCounter.enable(productId, shards);
+    }
+    productCache.invalidate(productId);
+    return getStockLevel(productId);
+  }
+
+  @Scheduled(fixedDelayString = "${app.inventory.rebalance-interval-ms}")
+  public void rebalanceShards() {
+    Query sharded = Query.query(where("stockShards").gt(0));
+    sharded.fields().include("stockShards");
+    for (ProductEntity product : mongoTemplate.find(sharded, ProductEntity.class)) {
+      stockShardCounter.rebalance(product.getId(), product.getStockShards());
+    }
+  }
+
+  private boolean takeStock(String productId, int quantity) {
+    // Hot products are sharded, their mode is read from the cache so the product document is
+    // not touched at all. A product disabled elsewhere still works from the shards, they fall
+    // back to the product's own stock.
+    int shards = productCache.get(productId).map(ProductEntity::getStockShards).orElse(0);
+    if (shards > 0) {
+      return stockShardCounter.take(productId, shards, quantity);
+    }
+
+    // Only matches while enough stock is left, the check and the decrement are one operation
+    Query stockQuery = Query.query(where("id").is(productId).and("stockQuantity").gte(quantity));
+    ProductEntity product =
+        mongoTemplate.findAndModify(
+            stockQuery, new Update().inc("stockQuantity", -quantity), ProductEntity.class);
+    if (product != null) {
+      productCache.invalidate(productId);
+      return true;
+    }
+
+    // The cached mode may predate sharding enabled on another instance, which drained the
+    // product document. Only a miss pays for reading the current mode.
+    Query mode = Query.query(where("id").is(productId));
+    mode.fields().include("stockShards");
+    ProductEntity current = mongoTemplate.findOne(mode, ProductEntity.class);
+    if (current == null || current.getStockShards() == 0) {
+      return false;
+    }
+    productCache.invalidate(productId);
+    return stockShardCounter.take(productId, current.getStockShards(), quantity);
+  }
+
+  // Returns the lines whose stock was taken. Unsharded products are decremented in one bulk write,
+  // each tagged with a token so a partial match can tell which of them took their units. Lines
+  // that missed get the single line path, which also catches a mode cached before sharding.
+  private Map<String, Integer> takeStockAll(Map<String, Integer> quantities) {
+    Map<String, Integer> taken = new HashMap<>();
+    Map<String, Integer> unsharded = new HashMap<>();
+    quantities.forEach(
+        (productId, quantity) -> {
+          int shards = productCache.get(productId).map(ProductEntity::getStockShards).orElse(0);
+          if (shards == 0) {
+            unsharded.put(productId, quantity);
+          } else if (stockShardCounter.take(productId, shards, quantity)) {
+            taken.put(productId, quantity);
+          }
+        });
+    if (unsharded.isEmpty()) {
+      return taken;
+    }
+
+    String token = new ObjectId().toHexString();
+    BulkOperations takes =
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductEntity.class);
+    unsharded.forEach(
+        (productId, quantity) ->
+            takes.updateOne(
+                Query.query(where("id").is(productId).and("stockQuantity").gte(quantity)),
+                new Update()
+                    .inc("stockQuantity", -quantity)
+                    .inc("version", 1)
+                    .push(PENDING_TAKES, token)));
+    int matched = takes.execute().getModifiedCount();
+
+    Query tagged = Query.query(where("id").in(unsharded.keySet()).and(PENDING_TAKES).is(token));
+    if (matched == unsharded.size()) {
+      taken.putAll(unsharded);
+    } else {
+      Query matchedIds = Query.of(tagged);
+      matchedIds.fields().include("id");
+      Map<String, Integer> missed = new HashMap<>(unsharded);
+      for (ProductEntity product : mongoTemplate.find(matchedIds, ProductEntity.class)) {
+        taken.put(product.getId(), missed.remove(product.getId()));
+      }
+      missed.forEach(
+          (productId, quantity) -> {
+            if (takeStock(productId, quantity)) {
+              taken.put(productId, quantity);
+            }
+          });
+    }
+    mongoTemplate.updateMulti(tagged, new Update().pull(PENDING_TAKES, token), ProductEntity.class);
+    unsharded.keySet().forEach(productCache::invalidate);
+    return taken;
+  }
+
+  private ProductEntity findProduct(String productId) {
+    ProductEntity product = mongoTemplate.findById(productId, ProductEntity.class);
+    if (product == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found");
+    }
+    return product;
+  }
+
+  // One unordered bulk write puts the units back, one $inc per product. Bulk writes don't bump
+  // the version the way template updates do, so it is bumped here for the product ETag.
+  private void restock(Map<String, Integer> quantities) {
+    if (quantities.isEmpty()) {
+      return;
+    }
+    BulkOperations bulk =
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductEntity.class);
+    quantities.forEach(
+        (productId, quantity) ->
+            bulk.updateOne(
+                Query.query(where("id").is(productId)),
+                new Update().inc("stockQuantity", quantity).inc("version", 1)));
+    bulk.execute();
+    quantities.keySet().forEach(productCache::invalidate);
+  }
+
+  private static void requirePositive(int quantity) {
+    if (quantity <= 0) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity must be at least 1");
+    }
+  }
+
+  private Query holdQuery(String cartId, String productId) {
+    return Query.query(where("cartId").is(cartId).and("productId").is(productId));
+  }
+}
@@ -0,0 +1,22 @@
+package com.ecommerce.inventory;
+
+import java.util.Date;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Units taken out of a product's stockQuantity and held for one cart line until expiresAt
+@Data
+@NoArgsConstructor
+@Document(collection = "stock_reservations")
+@CompoundIndex(name = "cart_product", def = "{'cartId': 1, 'productId': 1}", unique = true)
+public class StockReservationEntity {
+  @Id private String id;
+  private String cartId;
+  private String productId;
+  private int quantity;
+  @Indexed private Date expiresAt;
+}
@@ -0,0 +1,15 @@
+package com.ecommerce.inventory;
+
+import java.util.Date;
+import java.util.List;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockReservationRepository
+    extends MongoRepository<StockReservationEntity, String> {
+  List<StockReservationEntity> findByCartId(String cartId);
+
+  List<StockReservationEntity> findByExpiresAtBefore(Date now, Limit limit);
+}
@@ -0,0 +1,240 @@
+package com.ecommerce.inventory;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.product.ProductEntity;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+// Splits a hot product's stock over several documents so concurrent reservations land on
+// different documents instead of queueing on the product's write lock. Enabling, disabling and
+// rebalancing hold a lease in stock_shard_locks, so a rebalance on one instance can't write shards
+// that a disable on another has already folded back.
+@Component
+public class StockShardCounter {
+
+  // Longer than any single enable, disable or rebalance, a crashed holder frees it after this
+  private static final Duration LOCK_LEASE = Duration.ofSeconds(30);
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  // Starts at a random shard and walks the rest, a product-level remainder is tried last
+  public boolean take(String productId, int shards, int quantity) {
+    if (tryTake(productId, shards, quantity)) {
+      return true;
+    }
+    // Enough stock may be left overall but spread too thin for any single shard
+    if (total(productId) < quantity) {
+      return false;
+    }
+    rebalance(productId, shards);
+    return tryTake(productId, shards, quantity);
+  }
+
+  // Stock on the shards plus the remainder on the product, where released units are returned
+  public int total(String productId) {
+    int onShards =
+        mongoTemplate
+            .find(Query.query(where("productId").is(productId)), StockShardEntity.class)
+            .stream()
+            .mapToInt(StockShardEntity::getQuantity)
+            .sum();
+    ProductEntity product = mongoTemplate.findById(productId, ProductEntity.class);
+    return onShards + (product == null ? 0 : product.getStockQuantity());
+  }
+
+  // Moves the product's stock onto shards, returns false if the product is already sharded
+  public boolean enable(String productId, int shards) {
+    String holder = lockOrConflict(productId);
+    try {
+      Query unsharded = Query.query(where("id").is(productId).and("stockShards").not().gt(0));
+      ProductEntity product =
+          mongoTemplate.findAndModify(
+              unsharded,
+              new Update().set("stockShards", shards).set("stockQuantity", 0),
+              ProductEntity.class);
+      if (product == null) {
+        return false;
+      }
+
+      int stock = product.getStockQuantity();
+      for (int shard = 0; shard < shards; shard++) {
+        int share = stock / shards + (shard < stock % shards ? 1 : 0);
+        mongoTemplate.upsert(
+            shardQuery(productId, shard),
+            new Update().inc("quantity", share),
+            StockShardEntity.class);
+      }
+      return true;
+    } finally {
+      unlock(productId, holder);
+    }
+  }
+
+  // Folds every shard back into the product's stockQuantity. A rebalance that started under the
+  // old mode sees it switched off once it has the lease and leaves the shards alone.
+  public void disable(String productId) {
+    String holder = lockOrConflict(productId);
+    try {
+      mongoTemplate.updateFirst(
+          Query.query(where("id").is(productId)),
+          new Update().set("stockShards", 0),
+          ProductEntity.class);
+      List<StockShardEntity> removed =
+          mongoTemplate.findAllAndRemove(
+              Query.query(where("productId").is(productId)), StockShardEntity.class);
+      int stock = removed.stream().mapToInt(StockShardEntity::getQuantity).sum();
+      mongoTemplate.updateFirst(
+          Query.query(where("id").is(productId)),
+          new Update().inc("stockQuantity", stock),
+          ProductEntity.class);
+    } finally {
+      unlock(productId, holder);
+    }
+  }
+
+  // Evens the shards out by moving surplus units to the shards below the average, every move
+  // is a conditional decrement followed by an increment so no unit is ever created or lost.
+  // Skipped while another instance holds the lease or once the shard count has changed.
+  public void rebalance(String productId, int shards) {
+    String holder = lock(productId);
+    if (holder == null) {
+      return;
+    }
+    try {
+      Query mode = Query.query(where("id").is(productId).and("stockShards").is(shards));
+      if (mongoTemplate.exists(mode, ProductEntity.class)) {
+        moveToAverage(productId, shards);
+      }
+    } finally {
+      unlock(productId, holder);
+    }
+  }
+
+  private void moveToAverage(String productId, int shards) {
+    List<StockShardEntity> current =
+        new ArrayList<>(
+            mongoTemplate.find(
+                Query.query(where("productId").is(productId)), StockShardEntity.class));
+    int target = total(productId) / shards;
+
+    int pool = drainRemainder(productId);
+    for (StockShardEntity shard : current) {
+      int surplus = shard.getQuantity() - target;
+      if (surplus > 0) {
+        pool += takeExactly(shardQuery(productId, shard.getShard()), surplus);
+      }
+    }
+
+    for (int shard = 0; shard < shards && pool > 0; shard++) {
+      int have = quantityOf(current, shard);
+      int give = shard == shards - 1 ? pool : Math.min(pool, Math.max(target - have, 0));
+      if (give > 0) {
+        mongoTemplate.upsert(
+            shardQuery(productId, shard),
+            new Update().inc("quantity", give),
+            StockShardEntity.class);
+        pool -= give;
+      }
+    }
+  }
+
+  // Takes the lease if it is free or has lapsed and returns the holder token, null if it is held.
+  // A held lease doesn't match, so the upsert inserts a second document for the id and fails.
+  private String lock(String productId) {
+    Date now = new Date();
+    String holder = new ObjectId().toHexString();
+    Query free = Query.query(where("id").is(productId).and("lockedUntil").lt(now));
+    Update take =
+        new Update()
+            .set("holder", holder)
+            .set("lockedUntil", new Date(now.getTime() + LOCK_LEASE.toMillis()));
+    try {
+      mongoTemplate.upsert(free, take, StockShardLockEntity.class);
+      return holder;
+    } catch (DuplicateKeyException e) {
+      return null;
+    }
+  }
+
+  // Mode changes are rare admin calls, one that meets a running rebalance is told to retry
+  // rather than held on the request thread
+  private String lockOrConflict(String productId) {
+    String holder = lock(productId);
+    if (holder == null) {
+      throw new ResponseStatusException(
+          HttpStatus.CONFLICT, "Stock shards of this product are being rebalanced, please retry");
+    }
+    return holder;
+  }
+
+  private void unlock(String productId, String holder) {
+    mongoTemplate.remove(
+        Query.query(where("id").is(productId).and("holder").is(holder)),
+        StockShardLockEntity.class);
+  }
+
+  private boolean tryTake(String productId, int shards, int quantity) {
+    int start = ThreadLocalRandom.current().nextInt(shards);
+    for (int i = 0; i < shards; i++) {
+      if (takeExactly(shardQuery(productId, (start + i) % shards), quantity) > 0) {
+        return true;
+      }
+    }
+    Query remainder = Query.query(where("id").is(productId).and("stockQuantity").gte(quantity));
+    return mongoTemplate
+            .updateFirst(
+                remainder, new Update().inc("stockQuantity", -quantity), ProductEntity.class)
+            .getModifiedCount()
+        > 0;
+  }
+
+  private int takeExactly(Query shardQuery, int quantity) {
+    Query query = Query.of(shardQuery).addCriteria(where("quantity").gte(quantity));
+    StockShardEntity shard =
+        mongoTemplate.findAndModify(
+            query, new Update().inc("quantity", -quantity), StockShardEntity.class);
+    return shard == null ? 0 : quantity;
+  }
+
+  // Takes whatever stock was written to the product itself, e.g. released holds or an update
+  private int drainRemainder(String productId) {
+    ProductEntity product = mongoTemplate.findById(productId, ProductEntity.class);
+    int quantity = product == null ? 0 : product.getStockQuantity();
+    if (quantity <= 0) {
+      return 0;
+    }
+    Query query = Query.query(where("id").is(productId).and("stockQuantity").gte(quantity));
+    return mongoTemplate
+                .updateFirst(
+                    query, new Update().inc("stockQuantity", -quantity), ProductEntity.class)
+                .getModifiedCount()
+            > 0
+        ? quantity
+        : 0;
+  }
+
+  private static int quantityOf(List<StockShardEntity> shards, int shard) {
+    return shards.stream()
+        .filter(s -> s.getShard() == shard)
+        .mapToInt(StockShardEntity::getQuantity)
+        .findFirst()
+        .orElse(0);
+  }
+
+  private static Query shardQuery(String productId, int shard) {
+    return Query.query(where("productId").is(productId).and("shard").is(shard));
+  }
+}
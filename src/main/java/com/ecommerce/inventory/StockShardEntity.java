@@ -0,0 +1,19 @@
+package com.ecommerce.inventory;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// One slice of a sharded product's stock, slices are written independently of each other
+@Data
+@NoArgsConstructor
+@Document(collection = "stock_shards")
+@CompoundIndex(name = "product_shard", def = "{'productId': 1, 'shard': 1}", unique = true)
+public class StockShardEntity {
+  @Id private String id;
+  private String productId;
+  private int shard;
+  private int quantity;
+}
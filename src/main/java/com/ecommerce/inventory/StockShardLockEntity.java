@@ -0,0 +1,24 @@
+package com.ecommerce.inventory;
+
+import java.util.Date;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Lease on a sharded product's stock, held while StockShardCounter moves units between the shards
+// and the product. Kept apart from the product so taking it doesn't write the versioned document.
+@Data
+@NoArgsConstructor
+@Document(collection = "stock_shard_locks")
+public class StockShardLockEntity {
+  // The id of the product
+  @Id private String id;
+  // Set by the instance holding the lease, only that holder removes it again
+  private String holder;
+
+  // Lapsed leases are taken over at once, Mongo's TTL monitor clears the ones left behind
+  @Indexed(name = "lockedUntil_ttl", expireAfter = "0s")
+  private Date lockedUntil;
+}
@@ -0,0 +1,16 @@
+package com.ecommerce.inventory.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "Stock Level Response Data Transfer Object")
+public class StockLevelResponseDto {
+  private String productId;
+
+  @Schema(description = "Unreserved stock, summed over all shards for a sharded product")
+  private int stockQuantity;
+
+  @Schema(description = "Number of stock shards, 0 when stock is kept on the product")
+  private int stockShards;
+}
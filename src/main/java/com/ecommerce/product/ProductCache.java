@@ -0,0 +1,63 @@
+package com.ecommerce.product;
+
+import com.ecommerce.common.CacheStatsResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ProductCache {
+
+  @Autowired private ProductRepository productRepository;
+
+  @Value("${app.product-cache.maximum-size}")
+  private long maximumSize;
+
+  @Value("${app.product-cache.ttl-seconds}")
+  private long ttlSeconds;
+
+  private Cache<String, ProductEntity> cache;
+
+  @PostConstruct
+  public void init() {
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .build();
+  }
+
+  public Optional<ProductEntity> get(String id) {
+    // Missing products are not cached, the loader returning null leaves no entry behind
+    return Optional.ofNullable(cache.get(id, key -> productRepository.findById(key).orElse(null)));
+  }
+
+  public Map<String, ProductEntity> getAll(Iterable<String> ids) {
+    return cache.getAll(
+        ids,
+        missingIds -> {
+          Map<String, ProductEntity> loaded = new HashMap<>();
+          productRepository
+              .findAllById(new ArrayList<>(missingIds))
+              .forEach(p -> loaded.put(p.getId(), p));
+          return loaded;
+        });
+  }
+
+  public void invalidate(String id) {
+    cache.invalidate(id);
+  }
+
+  public CacheStatsResponse getStats() {
+    return CacheStatsResponse.from(cache.stats(), cache.estimatedSize());
+  }
+}
@@ -0,0 +1,15 @@
+package com.ecommerce.product;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// The single catalog counter, incremented on every product write so listings can revalidate
+@Data
+@NoArgsConstructor
+@Document(collection = "product_catalog_version")
+public class ProductCatalogVersionEntity {
+  @Id private String id;
+  private long counter;
+}
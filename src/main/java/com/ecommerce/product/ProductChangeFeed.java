@@ -0,0 +1,155 @@
+package com.ecommerce.product;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.common.ScrollCursor;
+import com.ecommerce.product.dto.ProductChangeDto;
+import com.ecommerce.product.dto.ProductChangesResponseDto;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+// Catalog changes since a cursor, read from the updatedAt index and from the tombstones left by
+// deletes. Stock changes made by reservations don't touch updatedAt and are not part of the feed.
+@Component
+public class ProductChangeFeed extends AbstractMongoEventListener<ProductEntity> {
+
+  // Must match the TTL on ProductTombstoneEntity.deletedAt
+  private static final Duration TOMBSTONE_RETENTION = Duration.ofDays(30);
+
+  // Lowest ObjectId, a cursor at a point in time sorts before every product changed at that time
+  private static final String MIN_ID = "000000000000000000000000";
+
+  private static final String CATALOG_VERSION_ID = "catalog";
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  // Changes younger than this are held back, a write stamped earlier may still be in flight
+  @Value("${app.product-changes.settle-ms}")
+  private long settleMillis;
+
+  // Repository deletes, single and bulk, all come through here
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<ProductEntity> event) {
+    Object id = event.getSource().get("_id");
+    if (id != null) {
+      mongoTemplate.save(new ProductTombstoneEntity(id.toString(), new Date()));
+    }
+    recordCatalogChange();
+  }
+
+  // Called after each product create, update and import batch. The latest updatedAt and the
+  // count can't stand in for it, a write stamped before the latest one or a create plus a bulk
+  // delete leaves both where they were.
+  public void recordCatalogChange() {
+    mongoTemplate.upsert(
+        Query.query(where("id").is(CATALOG_VERSION_ID)),
+        new Update().inc("counter", 1),
+        ProductCatalogVersionEntity.class);
+  }
+
+  // The listings use it as their weak ETag
+  public long catalogVersion() {
+    ProductCatalogVersionEntity version =
+        mongoTemplate.findById(CATALOG_VERSION_ID, ProductCatalogVersionEntity.class);
+    return version == null ? 0 : version.getCounter();
+  }
+
+  public ProductChangesResponseDto changesSince(String cursor, int limit) {
+    KeysetScrollPosition position = ScrollCursor.decode(cursor);
+    Date since = (Date) position.getKeys().get("changedAt");
+    Object sinceId = position.getKeys().get("id");
+    if (since != null
+        && since.before(new Date(System.currentTimeMillis() - TOMBSTONE_RETENTION.toMillis()))) {
+      throw new ResponseStatusException(
+          HttpStatus.GONE, "Cursor is older than the deletes kept, reload the full catalog");
+    }
+    Date until = new Date(System.currentTimeMillis() - settleMillis);
+
+    List<ProductChangeDto> changes = new ArrayList<>();
+    for (ProductEntity product :
+        mongoTemplate.find(after("updatedAt", since, sinceId, until, limit), ProductEntity.class)) {
+      ProductChangeDto change = new ProductChangeDto();
+      change.setType("upsert");
+      change.setProductId(product.getId());
+      change.setChangedAt(product.getUpdatedAt());
+      change.setProduct(product.toResponseDto());
+      changes.add(change);
+    }
+    for (ProductTombstoneEntity tombstone :
+        mongoTemplate.find(
+            after("deletedAt", since, sinceId, until, limit), ProductTombstoneEntity.class)) {
+      ProductChangeDto change = new ProductChangeDto();
+      change.setType("delete");
+      change.setProductId(tombstone.getId());
+      change.setChangedAt(tombstone.getDeletedAt());
+      changes.add(change);
+    }
+
+    // Both lists are in (time, id) order, merged they are cut back to the limit. Hex ObjectIds
+    // sort as strings the way Mongo sorts them.
+    changes.sort(
+        Comparator.comparing(ProductChangeDto::getChangedAt)
+            .thenComparing(ProductChangeDto::getProductId));
+    List<ProductChangeDto> page = changes.subList(0, Math.min(limit, changes.size()));
+
+    ProductChangesResponseDto response = new ProductChangesResponseDto();
+    response.setChanges(page);
+    if (page.isEmpty()) {
+      response.setNextCursor(cursor);
+    } else {
+      ProductChangeDto last = page.get(page.size() - 1);
+      response.setNextCursor(
+          ScrollCursor.encode(
+              ScrollPosition.forward(
+                  Map.of("changedAt", last.getChangedAt(), "id", last.getProductId()))));
+    }
+    return response;
+  }
+
+  public String cursorAt(Date time) {
+    return ScrollCursor.encode(ScrollPosition.forward(Map.of("changedAt", time, "id", MIN_ID)));
+  }
+
+  // Hands every change after cursor to consumer a page at a time and returns the cursor to carry
+  // on from. In-memory indexes use it to pick up writes made by other instances.
+  public String forEachPage(
+      String cursor, int pageSize, Consumer<List<ProductChangeDto>> consumer) {
+    ProductChangesResponseDto page;
+    do {
+      page = changesSince(cursor, pageSize);
+      consumer.accept(page.getChanges());
+      cursor = page.getNextCursor();
+    } while (page.getChanges().size() == pageSize);
+    return cursor;
+  }
+
+  // Strictly after (since, sinceId) in time then id order, and not after until
+  private static Query after(String timeField, Date since, Object sinceId, Date until, int limit) {
+    Criteria criteria = where(timeField).lte(until);
+    if (since != null) {
+      criteria.orOperator(
+          where(timeField).gt(since),
+          new Criteria().andOperator(where(timeField).is(since), where("id").gt(sinceId)));
+    }
+    return Query.query(criteria).with(Sort.by(timeField, "id")).limit(limit);
+  }
+}
@@ -1,36 +1,113 @@
 package com.ecommerce.product;
 
+import com.ecommerce.common.CacheStatsResponse;
 import com.ecommerce.common.PageResponse;
+import com.ecommerce.product.dto.ProductChangesResponseDto;
+import com.ecommerce.product.dto.ProductFacetsResponseDto;
 import com.ecommerce.product.dto.ProductPartialUpdateDto;
 import com.ecommerce.product.dto.ProductRequestDto;
 import com.ecommerce.product.dto.ProductResponseDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/v1/ecommerce/products")
 @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_STAFF')")
 public class ProductController {
 
+  private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
   @Autowired private ProductService productService;
 
+  @Autowired private ProductImportService productImportService;
+
+  @Autowired private ProductExportService productExportService;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Value("${app.product-export.timeout-ms}")
+  private long exportTimeoutMillis;
+
   @PostMapping
   public ResponseEntity<ProductResponseDto> createProduct(
       @RequestBody @Valid ProductRequestDto requestDto) {
     return new ResponseEntity<>(productService.createProduct(requestDto), HttpStatus.CREATED);
   }
 
+  // Catalog loads send the whole file in one request, the response streams NDJSON progress lines
+  // after every batch, one line per rejected row and a final summary
+  @PostMapping(
+      value = "/import",
+      consumes = {"application/x-ndjson", "text/csv"},
+      produces = "application/x-ndjson")
+  public void importProducts(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+      @RequestParam(defaultValue = "false") boolean ordered,
+      InputStream body,
+      HttpServletResponse response)
+      throws IOException {
+    boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(TEXT_CSV);
+    response.setContentType("application/x-ndjson");
+    OutputStream out = response.getOutputStream();
+
+    productImportService.importProducts(
+        body,
+        csv,
+        ordered,
+        event -> {
+          try {
+            out.write(objectMapper.writeValueAsBytes(event));
+            out.write('\n');
+            out.flush();
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        });
+  }
+
   @GetMapping("/{id}")
-  public ResponseEntity<ProductEntity> getProductById(@PathVariable String id) {
-    return ResponseEntity.ok(productService.getProductById(id));
+  public ResponseEntity<ProductEntity> getProductById(@PathVariable String id, WebRequest request) {
+    ProductEntity product = productService.getProductById(id);
+    if (request.checkNotModified(product.eTag())) {
+      return null;
+    }
+    return ResponseEntity.ok().eTag(product.eTag()).body(product);
+  }
+
+  @GetMapping("/cache/stats")
+  public ResponseEntity<CacheStatsResponse> getCacheStats() {
+    return ResponseEntity.ok(productService.getCacheStats());
+  }
+
+  // Ranked by relevance, each word of q matches as a prefix of a name, category or description word
+  @GetMapping("/search")
+  public ResponseEntity<List<ProductResponseDto>> searchProducts(
+      @RequestParam String q, @RequestParam(defaultValue = "20") int limit) {
+    return ResponseEntity.ok(productService.searchProducts(q, limit));
   }
 
   @GetMapping
@@ -39,26 +116,108 @@ public class ProductController {
       @RequestParam(required = false) BigDecimal minPrice,
       @RequestParam(required = false) BigDecimal maxPrice,
       @RequestParam(required = false) String searchTerm,
+      @RequestParam(required = false) Boolean active,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "10") int size,
       @RequestParam(defaultValue = "name") String sortBy,
-      @RequestParam(defaultValue = "asc") String sortDirection) {
+      @RequestParam(defaultValue = "asc") String sortDirection,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "true") boolean withTotal,
+      @RequestParam(required = false) String fields,
+      WebRequest request) {
+
+    // Weak, the catalog version doesn't follow stock moved by reservations. Checked before the
+    // page is read so a revalidation costs a single document read.
+    String eTag = "W/\"" + productService.getCatalogVersion() + "\"";
+    if (request.checkNotModified(eTag)) {
+      return null;
+    }
 
     Sort.Direction direction =
         sortDirection.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
 
-    PageRequest pageRequest = PageRequest.of(page, size, Sort.by(direction, sortBy));
-    Page<ProductResponseDto> products =
-        productService.getAllProducts(category, minPrice, maxPrice, searchTerm, pageRequest);
-    PageResponse<ProductResponseDto> pageResponse = new PageResponse<>();
-    pageResponse.setContent(products.getContent());
-    pageResponse.setPageNumber(products.getNumber());
-    pageResponse.setPageSize(products.getSize());
-    pageResponse.setTotalElements(products.getTotalElements());
-    pageResponse.setTotalPages(products.getTotalPages());
-    pageResponse.setLast(products.isLast());
-    pageResponse.setFirst(products.isFirst());
-    return ResponseEntity.ok(pageResponse);
+    ProductFilter filter = toFilter(category, minPrice, maxPrice, searchTerm, active, fields);
+
+    Sort sort = Sort.by(direction, ProductFields.storedField(sortBy));
+
+    // Keyset mode, "after" is empty for the first page and the returned nextCursor afterwards
+    if (after != null) {
+      Window<ProductResponseDto> products =
+          productService.getProductsAfter(filter, sort, size, after);
+      return ResponseEntity.ok()
+          .eTag(eTag)
+          .body(PageResponse.from(products, size, after.isEmpty()));
+    }
+
+    PageRequest pageRequest = PageRequest.of(page, size, sort);
+
+    // Infinite scroll clients skip the count query that fills the totals
+    if (!withTotal) {
+      Slice<ProductResponseDto> products = productService.getProductSlice(filter, pageRequest);
+      return ResponseEntity.ok().eTag(eTag).body(PageResponse.from(products));
+    }
+
+    Page<ProductResponseDto> products = productService.getAllProducts(filter, pageRequest);
+    return ResponseEntity.ok().eTag(eTag).body(PageResponse.from(products));
+  }
+
+  // Incremental sync for downstream caches and search nodes. since is empty for the first call
+  // and the returned nextCursor afterwards, deletes come through as delete entries.
+  @GetMapping("/changes")
+  public ResponseEntity<ProductChangesResponseDto> getProductChanges(
+      @RequestParam(defaultValue = "") String since,
+      @RequestParam(defaultValue = "100") int limit) {
+    return ResponseEntity.ok(productService.getChanges(since, limit));
+  }
+
+  // Sidebar counts for the listing filters, one aggregation per distinct filter until a product
+  // changes
+  @GetMapping("/facets")
+  public ResponseEntity<ProductFacetsResponseDto> getProductFacets(
+      @RequestParam(required = false) String category,
+      @RequestParam(required = false) BigDecimal minPrice,
+      @RequestParam(required = false) BigDecimal maxPrice,
+      @RequestParam(required = false) String searchTerm,
+      @RequestParam(required = false) Boolean active) {
+    ProductFilter filter = toFilter(category, minPrice, maxPrice, searchTerm, active, null);
+    return ResponseEntity.ok(productService.getFacets(filter));
+  }
+
+  // Partners pull the whole catalog in one request instead of paging through it. Takes the same
+  // filters as the listing and streams NDJSON or CSV, gzip compressed on request.
+  @GetMapping("/export")
+  public ResponseEntity<StreamingResponseBody> exportProducts(
+      @RequestParam(required = false) String category,
+      @RequestParam(required = false) BigDecimal minPrice,
+      @RequestParam(required = false) BigDecimal maxPrice,
+      @RequestParam(required = false) String searchTerm,
+      @RequestParam(required = false) Boolean active,
+      @RequestParam(required = false) String fields,
+      @RequestParam(defaultValue = "ndjson") String format,
+      @RequestParam(defaultValue = "false") boolean gzip,
+      HttpServletRequest request) {
+    if (!format.equals("ndjson") && !format.equals("csv")) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST, "Invalid format. Allowed values: ndjson, csv");
+    }
+    boolean csv = format.equals("csv");
+    ProductFilter filter = toFilter(category, minPrice, maxPrice, searchTerm, active, fields);
+
+    String fileName = "products." + format + (gzip ? ".gz" : "");
+    MediaType contentType =
+        gzip
+            ? MediaType.parseMediaType("application/gzip")
+            : csv ? TEXT_CSV : MediaType.parseMediaType("application/x-ndjson");
+    return ResponseEntity.ok()
+        .contentType(contentType)
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+        .body(
+            out -> {
+              // Only the export outlives the default async timeout, its own request is extended
+              // once streaming has started
+              request.getAsyncContext().setTimeout(exportTimeoutMillis);
+              productExportService.export(filter, csv, gzip, out);
+            });
   }
 
   @DeleteMapping("/{id}")
@@ -69,13 +228,35 @@ public class ProductController {
 
   @PutMapping("/{id}")
   public ResponseEntity<ProductResponseDto> updateProduct(
-      @PathVariable String id, @RequestBody @Valid ProductRequestDto requestDto) {
-    return ResponseEntity.ok(productService.updateProduct(id, requestDto));
+      @PathVariable String id,
+      @RequestBody @Valid ProductRequestDto requestDto,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    return ResponseEntity.ok(productService.updateProduct(id, requestDto, ifMatch));
   }
 
   @PatchMapping("/{id}")
   public ResponseEntity<ProductResponseDto> partialUpdateProduct(
-      @PathVariable String id, @Valid @RequestBody ProductPartialUpdateDto requestDto) {
-    return ResponseEntity.ok(productService.partialUpdateProduct(id, requestDto));
+      @PathVariable String id,
+      @Valid @RequestBody ProductPartialUpdateDto requestDto,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    return ResponseEntity.ok(productService.partialUpdateProduct(id, requestDto, ifMatch));
+  }
+
+  private ProductFilter toFilter(
+      String category,
+      BigDecimal minPrice,
+      BigDecimal maxPrice,
+      String searchTerm,
+      Boolean active,
+      String fields) {
+    ProductFilter filter = new ProductFilter();
+    filter.setCategory(category);
+    filter.setMinPrice(minPrice);
+    filter.setMaxPrice(maxPrice);
+    filter.setSearchTerm(searchTerm);
+    filter.setActive(active);
+    // Grid views ask for e.g. fields=name,price and skip reading the rest
+    filter.setFields(ProductFields.parse(fields));
+    return filter;
   }
 }
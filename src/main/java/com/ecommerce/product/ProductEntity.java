@@ -1,43 +1,84 @@
 package com.ecommerce.product;
 
+import com.ecommerce.common.Money;
 import com.ecommerce.product.dto.ProductRequestDto;
 import com.ecommerce.product.dto.ProductResponseDto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.Date;
+import java.util.Set;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
 @NoArgsConstructor
 @Document(collection = "products")
+@CompoundIndexes({
+  // Equality filters first, then the default name sort or the price range
+  @CompoundIndex(name = "category_active_name", def = "{'category': 1, 'active': 1, 'name': 1}"),
+  @CompoundIndex(
+      name = "category_active_priceMinor",
+      def = "{'category': 1, 'active': 1, 'priceMinor': 1}"),
+  @CompoundIndex(name = "active_name", def = "{'active': 1, 'name': 1}"),
+  @CompoundIndex(name = "active_priceMinor", def = "{'active': 1, 'priceMinor': 1}"),
+  // Position of the change feed, see ProductChangeFeed
+  @CompoundIndex(name = "updatedAt_id", def = "{'updatedAt': 1, '_id': 1}")
+})
 public class ProductEntity {
   @Id private String id;
   private String name;
   private String description;
-  private double price;
+  // Integer minor units so price ranges compare a single BSON type and scan the price indexes,
+  // older documents are moved over by ProductPriceMigration
+  @Indexed @JsonIgnore private long priceMinor;
   private int stockQuantity;
+  // Above 0 the stock lives on that many stock_shards documents, see StockShardCounter
+  private int stockShards;
   private String category;
   private Boolean active = true;
-  private String createdAt = new Date().toString();
-  private String updatedAt = new Date().toString();
+  private Date createdAt = new Date();
+  private Date updatedAt = new Date();
+  // Bumped by every write, stock moves included
+  @Version private Long version;
+  // Bumped when the name or price changes, cart lines compare it with the revision their
+  // snapshot was taken from
+  @JsonIgnore private long revision;
 
   public ProductEntity(ProductRequestDto requestDto) {
     this.name = requestDto.getName();
     this.description = requestDto.getDescription();
-    this.price = requestDto.getPrice();
+    setPrice(requestDto.getPrice());
     this.stockQuantity = requestDto.getStockQuantity();
     this.category = requestDto.getCategory();
     this.active = requestDto.getActive();
   }
 
+  // Strong ETag of the product. Every write bumps the version, stock moves included.
+  public String eTag() {
+    return "\"" + version + "\"";
+  }
+
+  // The price in major units, as the API takes and returns it
+  public double getPrice() {
+    return Money.toMajor(priceMinor);
+  }
+
+  public void setPrice(double price) {
+    this.priceMinor = Money.toMinor(price);
+  }
+
   // toResponseDto
   public ProductResponseDto toResponseDto() {
     ProductResponseDto responseDto = new ProductResponseDto();
     responseDto.setId(id);
     responseDto.setName(name);
     responseDto.setDescription(description);
-    responseDto.setPrice(price);
+    responseDto.setPrice(getPrice());
     responseDto.setStockQuantity(stockQuantity);
     responseDto.setCategory(category);
     responseDto.setActive(active);
@@ -45,4 +86,38 @@ public class ProductEntity {
     responseDto.setUpdatedAt(updatedAt);
     return responseDto;
   }
+
+  // Only the selected fields are set, the others are left null and not serialized
+  public ProductResponseDto toResponseDto(Set<String> fields) {
+    if (fields == null) {
+      return toResponseDto();
+    }
+    ProductResponseDto responseDto = new ProductResponseDto();
+    responseDto.setId(id);
+    if (fields.contains("name")) {
+      responseDto.setName(name);
+    }
+    if (fields.contains("description")) {
+      responseDto.setDescription(description);
+    }
+    if (fields.contains("price")) {
+      responseDto.setPrice(getPrice());
+    }
+    if (fields.contains("stockQuantity")) {
+      responseDto.setStockQuantity(stockQuantity);
+    }
+    if (fields.contains("category")) {
+      responseDto.setCategory(category);
+    }
+    if (fields.contains("active")) {
+      responseDto.setActive(active);
+    }
+    if (fields.contains("createdAt")) {
+      responseDto.setCreatedAt(createdAt);
+    }
+    if (fields.contains("updatedAt")) {
+      responseDto.setUpdatedAt(updatedAt);
+    }
+    return responseDto;
+  }
 }
@@ -0,0 +1,75 @@
+package com.ecommerce.product;
+
+import com.ecommerce.product.dto.ProductResponseDto;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Writes every product matching a filter straight from a Mongo cursor to the response, one row at
+// a time, so heap use doesn't grow with the size of the catalog
+@Service
+public class ProductExportService {
+
+  @Autowired private ProductService productService;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Value("${app.product-export.batch-size}")
+  private int batchSize;
+
+  public void export(ProductFilter filter, boolean csv, boolean gzip, OutputStream output)
+      throws IOException {
+    OutputStream target = gzip ? new GZIPOutputStream(output) : output;
+    Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8));
+    List<String> columns = ProductFields.columns(filter.getFields());
+
+    if (csv) {
+      writer.write(String.join(",", columns));
+      writer.write('\n');
+    }
+    try (Stream<ProductResponseDto> products = productService.streamProducts(filter, batchSize)) {
+      Iterator<ProductResponseDto> iterator = products.iterator();
+      while (iterator.hasNext()) {
+        ProductResponseDto product = iterator.next();
+        writer.write(csv ? toCsv(product, columns) : objectMapper.writeValueAsString(product));
+        writer.write('\n');
+      }
+    }
+    writer.flush();
+    // Writes the gzip trailer, the response stream itself is closed by the container
+    if (gzip) {
+      ((GZIPOutputStream) target).finish();
+    }
+  }
+
+  private String toCsv(ProductResponseDto product, List<String> columns) {
+    JsonNode row = objectMapper.valueToTree(product);
+    return columns.stream()
+        .map(column -> row.hasNonNull(column) ? escapeCsv(row.get(column).asText()) : "")
+        .collect(Collectors.joining(","));
+  }
+
+  // Quoted when the value holds a separator, a quote or a line break, quotes are doubled
+  private static String escapeCsv(String value) {
+    if (value.contains(",")
+        || value.contains("\"")
+        || value.contains("\n")
+        || value.contains("\r")) {
+      return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    return value;
+  }
+}
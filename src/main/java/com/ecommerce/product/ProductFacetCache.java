@@ -0,0 +1,64 @@
+package com.ecommerce.product;
+
+import com.ecommerce.product.dto.ProductFacetsResponseDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+// Facet counts per filter signature. Any product save or delete can move a count, so every entry
+// is dropped on a write, the TTL covers writes made by other instances.
+@Component
+public class ProductFacetCache extends AbstractMongoEventListener<ProductEntity> {
+
+  @Value("${app.product-facets.cache-size}")
+  private long maximumSize;
+
+  @Value("${app.product-facets.ttl-seconds}")
+  private long ttlSeconds;
+
+  private Cache<List<Object>, ProductFacetsResponseDto> cache;
+
+  @PostConstruct
+  public void init() {
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+  }
+
+  public ProductFacetsResponseDto get(
+      ProductFilter filter, Supplier<ProductFacetsResponseDto> loader) {
+    return cache.get(signature(filter), key -> loader.get());
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<ProductEntity> event) {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<ProductEntity> event) {
+    cache.invalidateAll();
+  }
+
+  // The filter values only, the resolved search matches follow from the search term. Prices are
+  // normalized so 10 and 10.00 share an entry.
+  private static List<Object> signature(ProductFilter filter) {
+    return Arrays.asList(
+        filter.getCategory(),
+        filter.getMinPrice() == null ? null : filter.getMinPrice().stripTrailingZeros(),
+        filter.getMaxPrice() == null ? null : filter.getMaxPrice().stripTrailingZeros(),
+        filter.getSearchTerm(),
+        filter.getActive());
+  }
+}
@@ -0,0 +1,73 @@
+package com.ecommerce.product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+// Sparse fieldsets for product reads, the id is always returned
+public final class ProductFields {
+
+  // In the column order of a CSV export
+  private static final List<String> SELECTABLE =
+      List.of(
+          "name",
+          "description",
+          "price",
+          "stockQuantity",
+          "category",
+          "active",
+          "createdAt",
+          "updatedAt");
+
+  private ProductFields() {}
+
+  // Name of the stored field behind an API field, used for projections and sorting
+  public static String storedField(String field) {
+    return field.equals("price") ? "priceMinor" : field;
+  }
+
+  // Comma separated field names, null or blank selects every field
+  public static Set<String> parse(String fields) {
+    if (fields == null || fields.isBlank()) {
+      return null;
+    }
+    Set<String> selected =
+        Arrays.stream(fields.split(","))
+            .map(String::trim)
+            .filter(field -> !field.isEmpty())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    for (String field : selected) {
+      if (!SELECTABLE.contains(field)) {
+        throw new ResponseStatusException(
+            HttpStatus.BAD_REQUEST, "Unknown product field: " + field);
+      }
+    }
+    return selected;
+  }
+
+  // The id followed by the selected fields, or by every field when none are selected
+  public static List<String> columns(Set<String> fields) {
+    List<String> columns = new ArrayList<>();
+    columns.add("id");
+    SELECTABLE.stream()
+        .filter(field -> fields == null || fields.contains(field))
+        .forEach(columns::add);
+    return columns;
+  }
+
+  // Only the selected fields are read from Mongo, plus the sort keys a keyset scroll needs
+  public static void project(Query query, Set<String> fields, Sort sort) {
+    if (fields == null) {
+      return;
+    }
+    fields.forEach(field -> query.fields().include(storedField(field)));
+    sort.forEach(order -> query.fields().include(order.getProperty()));
+  }
+}
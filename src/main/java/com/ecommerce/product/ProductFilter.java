@@ -0,0 +1,56 @@
+package com.ecommerce.product;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.common.Money;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import lombok.Data;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+@Data
+public class ProductFilter {
+  private String category;
+  private BigDecimal minPrice;
+  private BigDecimal maxPrice;
+  private String searchTerm;
+  private Boolean active;
+
+  // Product ids matching searchTerm, resolved from the search index before querying
+  private Collection<String> searchMatches;
+
+  // Fields to read and return, null for all of them, see ProductFields
+  private Set<String> fields;
+
+  // Every given filter is combined into one query, null filters are ignored
+  public Criteria toCriteria() {
+    List<Criteria> criteria = new ArrayList<>();
+
+    if (active != null) {
+      criteria.add(where("active").is(active));
+    }
+    if (category != null) {
+      criteria.add(where("category").is(category));
+    }
+    if (minPrice != null || maxPrice != null) {
+      // Bounds between two cents round inwards so the range stays inclusive
+      Criteria price = where("priceMinor");
+      if (minPrice != null) {
+        price.gte(Money.toMinor(minPrice, RoundingMode.CEILING));
+      }
+      if (maxPrice != null) {
+        price.lte(Money.toMinor(maxPrice, RoundingMode.FLOOR));
+      }
+      criteria.add(price);
+    }
+    if (searchTerm != null) {
+      criteria.add(where("id").in(searchMatches == null ? List.of() : searchMatches));
+    }
+
+    return criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria);
+  }
+}
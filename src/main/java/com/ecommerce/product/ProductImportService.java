@@ -0,0 +1,281 @@
+package com.ecommerce.product;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.common.Money;
+import com.ecommerce.product.dto.ProductImportEventDto;
+import com.ecommerce.product.dto.ProductRequestDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+// Reads NDJSON or CSV rows one line at a time and upserts them in bulkWrite batches, so memory is
+// bounded by the batch size whatever the size of the upload. Rows with an id update that product,
+// rows without one create a new product.
+@Slf4j
+@Service
+public class ProductImportService {
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Autowired private Validator validator;
+
+  @Autowired private ApplicationEventPublisher eventPublisher;
+
+  @Autowired private ProductCache productCache;
+
+  @Autowired private ProductChangeFeed productChangeFeed;
+
+  @Value("${app.product-import.batch-size}")
+  private int batchSize;
+
+  @Value("${app.product-import.max-errors}")
+  private int maxErrors;
+
+  // Ordered imports apply rows in input order and stop at the first rejected row
+  public void importProducts(
+      InputStream input, boolean csv, boolean ordered, Consumer<ProductImportEventDto> events)
+      throws IOException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    ImportRun run = new ImportRun(ordered, events);
+
+    List<String> header = null;
+    long lineNumber = 0;
+    String line;
+    while (!run.stopped && (line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.isBlank()) {
+        continue;
+      }
+      if (csv && header == null) {
+        header = parseCsvLine(line);
+        continue;
+      }
+
+      run.processed++;
+      try {
+        JsonNode row = csv ? toJson(header, parseCsvLine(line)) : objectMapper.readTree(line);
+        run.add(lineNumber, row);
+      } catch (JsonProcessingException ex) {
+        run.reject(lineNumber, "Malformed row");
+      } catch (ResponseStatusException ex) {
+        run.reject(lineNumber, ex.getReason());
+      }
+
+      if (run.pending.size() >= batchSize) {
+        run.flush();
+      }
+    }
+    if (!run.stopped) {
+      run.flush();
+    }
+
+    log.info(
+        "Product import finished: {} rows, {} upserted, {} failed",
+        run.processed,
+        run.upserted,
+        run.failed);
+    events.accept(ProductImportEventDto.counts("summary", run.processed, run.upserted, run.failed));
+  }
+
+  // State of one import, the pending batch never holds more than batchSize rows
+  private class ImportRun {
+    private final boolean ordered;
+    private final Consumer<ProductImportEventDto> events;
+    private final List<Long> pendingLines = new ArrayList<>();
+    private final List<PendingRow> pending = new ArrayList<>();
+    private long processed;
+    private long upserted;
+    private long failed;
+    private boolean stopped;
+
+    ImportRun(boolean ordered, Consumer<ProductImportEventDto> events) {
+      this.ordered = ordered;
+      this.events = events;
+    }
+
+    void add(long lineNumber, JsonNode row) throws JsonProcessingException {
+      if (!row.isObject()) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Row is not an object");
+      }
+      JsonNode idNode = row.get("id");
+      String id =
+          idNode == null || idNode.asText().isBlank()
+              ? new ObjectId().toHexString()
+              : idNode.asText();
+
+      ProductRequestDto product = objectMapper.treeToValue(row, ProductRequestDto.class);
+      Set<ConstraintViolation<ProductRequestDto>> violations = validator.validate(product);
+      if (!violations.isEmpty()) {
+        throw new ResponseStatusException(
+            HttpStatus.BAD_REQUEST,
+            violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", ")));
+      }
+
+      pendingLines.add(lineNumber);
+      pending.add(new PendingRow(id, product));
+    }
+
+    void reject(long lineNumber, String message) {
+      failed++;
+      if (failed <= maxErrors) {
+        events.accept(ProductImportEventDto.error(lineNumber, message));
+      }
+      if (ordered) {
+        // Rows read before the rejected one still go in, in order
+        flush();
+        stopped = true;
+      }
+    }
+
+    void flush() {
+      if (pending.isEmpty()) {
+        return;
+      }
+
+      BulkOperations bulk =
+          mongoTemplate.bulkOps(
+              ordered ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED,
+              ProductEntity.class);
+      Date now = new Date();
+      for (PendingRow row : pending) {
+        bulk.upsert(Query.query(where("id").is(row.id())), toUpdate(row.product(), now));
+      }
+
+      try {
+        BulkWriteResult result = bulk.execute();
+        upserted += result.getMatchedCount() + result.getUpserts().size();
+      } catch (BulkOperationException ex) {
+        upserted += ex.getResult().getMatchedCount() + ex.getResult().getUpserts().size();
+        for (BulkWriteError error : ex.getErrors()) {
+          failed++;
+          if (failed <= maxErrors) {
+            events.accept(
+                ProductImportEventDto.error(
+                    pendingLines.get(error.getIndex()), error.getMessage()));
+          }
+        }
+        stopped = ordered;
+      }
+
+      refreshProducts(pending.stream().map(PendingRow::id).toList());
+      productChangeFeed.recordCatalogChange();
+      pending.clear();
+      pendingLines.clear();
+      events.accept(ProductImportEventDto.counts("progress", processed, upserted, failed));
+    }
+  }
+
+  private record PendingRow(String id, ProductRequestDto product) {}
+
+  // Version is bumped the way save() would, new products get the fields a save() sets up front
+  private static Update toUpdate(ProductRequestDto product, Date now) {
+    return new Update()
+        .set("name", product.getName())
+        .set("description", product.getDescription())
+        .set("priceMinor", Money.toMinor(product.getPrice()))
+        .unset("price")
+        .set("stockQuantity", product.getStockQuantity())
+        .set("category", product.getCategory())
+        .set("active", product.getActive())
+        .set("updatedAt", now)
+        .setOnInsert("createdAt", now)
+        .setOnInsert("stockShards", 0)
+        .inc("version", 1L)
+        .inc("revision", 1L);
+  }
+
+  // Bulk writes raise no entity events, so the written products are read back once and announced
+  // as saved for the search and revision indexes, and dropped from the product cache
+  private void refreshProducts(List<String> ids) {
+    Query query = Query.query(where("id").in(ids));
+    query.fields().include("name", "category", "description", "version", "revision");
+    for (ProductEntity product : mongoTemplate.find(query, ProductEntity.class)) {
+      eventPublisher.publishEvent(new AfterSaveEvent<>(product, new Document(), "products"));
+      productCache.invalidate(product.getId());
+    }
+  }
+
+  private ObjectNode toJson(List<String> header, List<String> values) {
+    if (values.size() != header.size()) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST,
+          "Expected " + header.size() + " columns but found " + values.size());
+    }
+    ObjectNode row = objectMapper.createObjectNode();
+    for (int i = 0; i < header.size(); i++) {
+      // Empty cells count as missing so the required field checks report them
+      if (!values.get(i).isEmpty()) {
+        row.put(header.get(i).trim(), values.get(i));
+      }
+    }
+    return row;
+  }
+
+  // Comma separated with optional double quotes, "" inside quotes is a literal quote. Quoted
+  // values can't span lines.
+  private static List<String> parseCsvLine(String line) {
+    List<String> values = new ArrayList<>();
+    StringBuilder value = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          value.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          value.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        values.add(value.toString());
+        value.setLength(0);
+      } else {
+        value.append(c);
+      }
+    }
+    values.add(value.toString());
+    return values;
+  }
+}
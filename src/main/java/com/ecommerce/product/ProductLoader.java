@@ -0,0 +1,52 @@
+package com.ecommerce.product;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+// Remembers every product looked up during one request so repeated lookups of the same id cost
+// nothing. Ids asked for together go to the cache in one getAll, which loads its misses with a
+// single $in query.
+@Component
+@RequestScope
+public class ProductLoader {
+
+  @Autowired private ProductCache productCache;
+
+  // Empty marks an id that was looked up and doesn't exist
+  private final Map<String, Optional<ProductEntity>> loaded = new HashMap<>();
+
+  public Optional<ProductEntity> load(String id) {
+    return Optional.ofNullable(loadAll(List.of(id)).get(id));
+  }
+
+  // Missing products are left out of the returned map
+  public Map<String, ProductEntity> loadAll(Iterable<String> ids) {
+    List<String> pending = new ArrayList<>();
+    for (String id : ids) {
+      if (!loaded.containsKey(id) && !pending.contains(id)) {
+        pending.add(id);
+      }
+    }
+    if (!pending.isEmpty()) {
+      Map<String, ProductEntity> products = productCache.getAll(pending);
+      pending.forEach(id -> loaded.put(id, Optional.ofNullable(products.get(id))));
+    }
+
+    Map<String, ProductEntity> result = new HashMap<>();
+    for (String id : ids) {
+      loaded.get(id).ifPresent(product -> result.put(id, product));
+    }
+    return result;
+  }
+
+  // Called after a write so the rest of the request doesn't see the old copy
+  public void forget(String id) {
+    loaded.remove(id);
+  }
+}
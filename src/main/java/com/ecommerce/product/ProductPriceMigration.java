@@ -0,0 +1,93 @@
+package com.ecommerce.product;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.common.Money;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+// Moves prices written before priceMinor existed, as doubles or as strings, into integer minor
+// units and drops the indexes that were built on the old field. Safe to run on every start.
+@Slf4j
+@Component
+public class ProductPriceMigration {
+
+  private static final int BATCH_SIZE = 1000;
+  private static final List<String> LEGACY_INDEXES =
+      List.of("category_active_price", "active_price");
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void migrate() {
+    IndexOperations indexOps = mongoTemplate.indexOps(ProductEntity.class);
+    for (IndexInfo index : indexOps.getIndexInfo()) {
+      if (LEGACY_INDEXES.contains(index.getName())) {
+        indexOps.dropIndex(index.getName());
+      }
+    }
+
+    Query legacy = Query.query(where("priceMinor").exists(false).and("price").exists(true));
+    legacy.fields().include("price");
+    String collection = mongoTemplate.getCollectionName(ProductEntity.class);
+
+    long migrated = 0;
+    BulkOperations bulk = null;
+    int pending = 0;
+    try (Stream<Document> products = mongoTemplate.stream(legacy, Document.class, collection)) {
+      for (Document product : (Iterable<Document>) products::iterator) {
+        Long priceMinor = toMinor(product.get("price"));
+        if (priceMinor == null) {
+          log.warn(
+              "Product {} has an unreadable price: {}", product.get("_id"), product.get("price"));
+          continue;
+        }
+        if (bulk == null) {
+          bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+        }
+        bulk.updateOne(
+            Query.query(where("_id").is(product.get("_id"))),
+            new Update().set("priceMinor", priceMinor).unset("price"));
+        if (++pending == BATCH_SIZE) {
+          bulk.execute();
+          migrated += pending;
+          bulk = null;
+          pending = 0;
+        }
+      }
+    }
+    if (bulk != null) {
+      bulk.execute();
+      migrated += pending;
+    }
+    if (migrated > 0) {
+      log.info("Moved {} product prices to minor units", migrated);
+    }
+  }
+
+  // Doubles go through their decimal string so 19.99 becomes 1999 and not 1998
+  private static Long toMinor(Object price) {
+    try {
+      if (price instanceof Number || price instanceof String) {
+        return Money.toMinor(new BigDecimal(price.toString().trim()), RoundingMode.HALF_UP);
+      }
+    } catch (NumberFormatException | ArithmeticException ex) {
+      // Reported by the caller
+    }
+    return null;
+  }
+}
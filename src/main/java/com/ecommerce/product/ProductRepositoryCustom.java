@@ -0,0 +1,34 @@
+package com.ecommerce.product;
+
+import com.ecommerce.product.dto.ProductFacetsResponseDto;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.query.Update;
+
+public interface ProductRepositoryCustom {
+  Page<ProductEntity> findByFilter(ProductFilter filter, Pageable pageable);
+
+  Slice<ProductEntity> findSliceByFilter(ProductFilter filter, Pageable pageable);
+
+  Window<ProductEntity> scrollByFilter(
+      ProductFilter filter, Sort sort, int limit, KeysetScrollPosition position);
+
+  // Counts per category and per price bucket in one $facet aggregation, the boundaries are the
+  // ascending lower bounds of the buckets
+  ProductFacetsResponseDto facetsByFilter(ProductFilter filter, List<Double> priceBoundaries);
+
+  // Every match in id order from one cursor, the caller closes the stream
+  Stream<ProductEntity> streamByFilter(ProductFilter filter, int batchSize);
+
+  // Applies the field changes and moves stock by stockChange, only while the product still has
+  // the version they were computed from. Stock is never overwritten, so reservations made in the
+  // meantime are kept. Empty if the version moved or the stock can't cover a decrease.
+  Optional<ProductEntity> updateFields(String id, Long version, Update update, int stockChange);
+}
@@ -0,0 +1,159 @@
+package com.ecommerce.product;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.common.Money;
+import com.ecommerce.product.dto.PriceBucketDto;
+import com.ecommerce.product.dto.ProductFacetsResponseDto;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+  private static final String OVERFLOW_BUCKET = "overflow";
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private ApplicationEventPublisher eventPublisher;
+
+  @Override
+  public Page<ProductEntity> findByFilter(ProductFilter filter, Pageable pageable) {
+    Query query = Query.query(filter.toCriteria()).with(pageable);
+    ProductFields.project(query, filter.getFields(), pageable.getSort());
+    List<ProductEntity> products = mongoTemplate.find(query, ProductEntity.class);
+
+    // The count only runs when the page alone can't tell the total
+    return PageableExecutionUtils.getPage(
+        products,
+        pageable,
+        () -> mongoTemplate.count(Query.of(query).limit(-1).skip(-1), ProductEntity.class));
+  }
+
+  @Override
+  public Slice<ProductEntity> findSliceByFilter(ProductFilter filter, Pageable pageable) {
+    // One extra row tells whether a next page exists without a count query
+    Query query = Query.query(filter.toCriteria()).with(pageable).limit(pageable.getPageSize() + 1);
+    ProductFields.project(query, filter.getFields(), pageable.getSort());
+    List<ProductEntity> products = mongoTemplate.find(query, ProductEntity.class);
+
+    boolean hasNext = products.size() > pageable.getPageSize();
+    List<ProductEntity> content = hasNext ? products.subList(0, pageable.getPageSize()) : products;
+    return new SliceImpl<>(content, pageable, hasNext);
+  }
+
+  @Override
+  public Window<ProductEntity> scrollByFilter(
+      ProductFilter filter, Sort sort, int limit, KeysetScrollPosition position) {
+    // Seeks past the last sort key and id instead of skipping, and never counts
+    Query query = Query.query(filter.toCriteria()).with(sort).limit(limit).with(position);
+    ProductFields.project(query, filter.getFields(), sort);
+    return mongoTemplate.scroll(query, ProductEntity.class);
+  }
+
+  @Override
+  public ProductFacetsResponseDto facetsByFilter(
+      ProductFilter filter, List<Double> priceBoundaries) {
+    List<Long> boundariesMinor = priceBoundaries.stream().map(Money::toMinor).toList();
+    Aggregation aggregation =
+        Aggregation.newAggregation(
+            Aggregation.match(filter.toCriteria()),
+            Aggregation.facet(Aggregation.group("category").count().as("count"))
+                .as("categories")
+                .and(
+                    Aggregation.bucket("priceMinor")
+                        .withBoundaries(boundariesMinor.toArray())
+                        .withDefaultBucket(OVERFLOW_BUCKET)
+                        .andOutputCount()
+                        .as("count"))
+                .as("priceBuckets"));
+    Document result =
+        mongoTemplate
+            .aggregate(aggregation, ProductEntity.class, Document.class)
+            .getUniqueMappedResult();
+
+    Map<String, Long> categories = new TreeMap<>();
+    for (Document category : result.getList("categories", Document.class)) {
+      if (category.getString("_id") == null) {
+        continue;
+      }
+      categories.put(category.getString("_id"), ((Number) category.get("count")).longValue());
+    }
+
+    // Prices past the last boundary land in the overflow bucket, which is open ended
+    List<PriceBucketDto> priceBuckets = new ArrayList<>();
+    for (Document bucket : result.getList("priceBuckets", Document.class)) {
+      PriceBucketDto priceBucket = new PriceBucketDto();
+      if (OVERFLOW_BUCKET.equals(bucket.get("_id"))) {
+        priceBucket.setMin(priceBoundaries.get(priceBoundaries.size() - 1));
+      } else {
+        long min = ((Number) bucket.get("_id")).longValue();
+        priceBucket.setMin(Money.toMajor(min));
+        priceBucket.setMax(Money.toMajor(boundariesMinor.get(boundariesMinor.indexOf(min) + 1)));
+      }
+      priceBucket.setCount(((Number) bucket.get("count")).longValue());
+      priceBuckets.add(priceBucket);
+    }
+
+    ProductFacetsResponseDto facets = new ProductFacetsResponseDto();
+    facets.setCategories(categories);
+    facets.setPriceBuckets(priceBuckets);
+    return facets;
+  }
+
+  @Override
+  public Stream<ProductEntity> streamByFilter(ProductFilter filter, int batchSize) {
+    // Documents arrive batchSize at a time, nothing beyond the current batch is held
+    Sort sort = Sort.by("id");
+    Query query = Query.query(filter.toCriteria()).with(sort).cursorBatchSize(batchSize);
+    ProductFields.project(query, filter.getFields(), sort);
+    return mongoTemplate.stream(query, ProductEntity.class);
+  }
+
+  @Override
+  public Optional<ProductEntity> updateFields(
+      String id, Long version, Update update, int stockChange) {
+    Criteria criteria = where("id").is(id).and("version").is(version);
+    if (stockChange < 0) {
+      criteria.and("stockQuantity").gte(-stockChange);
+    }
+    if (stockChange != 0) {
+      update.inc("stockQuantity", stockChange);
+    }
+    update.inc("version", 1L);
+
+    ProductEntity updated =
+        mongoTemplate.findAndModify(
+            Query.query(criteria),
+            update,
+            FindAndModifyOptions.options().returnNew(true),
+            ProductEntity.class);
+
+    // findAndModify raises no entity events, the listeners are told the way a save() would
+    if (updated != null) {
+      eventPublisher.publishEvent(new AfterSaveEvent<>(updated, new Document(), "products"));
+    }
+    return Optional.ofNullable(updated);
+  }
+}
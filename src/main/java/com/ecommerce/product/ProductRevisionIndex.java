@@ -0,0 +1,157 @@
+package com.ecommerce.product;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import com.ecommerce.product.dto.ProductChangeDto;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+// Current name and price revision of every product, kept in memory so cart reads can tell whether
+// a line's snapshot is still current without loading the product. Only catalog writes move it and
+// they all stamp updatedAt, so local save and delete events apply at once, writes made by other
+// instances arrive through the change feed, and ids not known here are looked up in Mongo.
+@Component
+public class ProductRevisionIndex extends AbstractMongoEventListener<ProductEntity> {
+
+  private static final int SYNC_PAGE_SIZE = 1000;
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private ProductChangeFeed productChangeFeed;
+
+  @Autowired private ProductCache productCache;
+
+  @Value("${app.product-changes.settle-ms}")
+  private long settleMillis;
+
+  private final Map<String, Long> revisions = new ConcurrentHashMap<>();
+
+  // Change feed position this node has applied up to
+  private volatile String syncCursor;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    // Products saved before versioning start at 0, a null version would make save() insert
+    mongoTemplate.updateMulti(
+        Query.query(where("version").exists(false)),
+        new Update().set("version", 0L),
+        ProductEntity.class);
+
+    Query query = new Query();
+    query.fields().include("revision");
+    syncCursor = productChangeFeed.cursorAt(new Date(System.currentTimeMillis() - settleMillis));
+    revisions.clear();
+    try (Stream<ProductEntity> products = mongoTemplate.stream(query, ProductEntity.class)) {
+      products.forEach(product -> revisions.put(product.getId(), product.getRevision()));
+    }
+  }
+
+  // Current revisions of the given products, ids not known here are looked up with one _id and
+  // revision query. Deleted products are left out.
+  public Map<String, Long> getAll(Collection<String> productIds) {
+    Map<String, Long> found = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String productId : productIds) {
+      Long revision = revisions.get(productId);
+      if (revision != null) {
+        found.put(productId, revision);
+      } else {
+        missing.add(productId);
+      }
+    }
+    if (!missing.isEmpty()) {
+      Map<String, Long> fetched = fetch(missing);
+      learn(fetched);
+      found.putAll(fetched);
+    }
+    return found;
+  }
+
+  // Applies revision changes and deletes made on any instance since the last sync
+  @Scheduled(fixedDelayString = "${app.product-changes.sync-interval-ms}")
+  public void syncFromChangeFeed() {
+    if (syncCursor == null) {
+      return;
+    }
+    try {
+      syncCursor =
+          productChangeFeed.forEachPage(
+              syncCursor,
+              SYNC_PAGE_SIZE,
+              changes -> {
+                List<String> upserted = new ArrayList<>();
+                for (ProductChangeDto change : changes) {
+                  if ("delete".equals(change.getType())) {
+                    revisions.remove(change.getProductId());
+                  } else {
+                    upserted.add(change.getProductId());
+                  }
+                }
+                // The feed carries no revision, the changed products are read back in one query
+                learn(fetch(upserted));
+              });
+    } catch (ResponseStatusException e) {
+      // The cursor outlived the tombstones, only a full scan is complete again
+      rebuild();
+    }
+  }
+
+  // A revision this node didn't know means its cached product may be an older copy as well
+  private void learn(Map<String, Long> fetched) {
+    fetched.forEach(
+        (productId, revision) -> {
+          if (!revision.equals(revisions.put(productId, revision))) {
+            productCache.invalidate(productId);
+          }
+        });
+  }
+
+  private Map<String, Long> fetch(Collection<String> productIds) {
+    Map<String, Long> fetched = new HashMap<>();
+    if (productIds.isEmpty()) {
+      return fetched;
+    }
+    Query query = Query.query(where("id").in(productIds));
+    query.fields().include("revision");
+    for (ProductEntity product : mongoTemplate.find(query, ProductEntity.class)) {
+      fetched.put(product.getId(), product.getRevision());
+    }
+    return fetched;
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<ProductEntity> event) {
+    ProductEntity product = event.getSource();
+    revisions.put(product.getId(), product.getRevision());
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<ProductEntity> event) {
+    Document filter = event.getSource();
+    if (filter.isEmpty()) {
+      revisions.clear();
+    } else if (filter.get("_id") != null) {
+      revisions.remove(filter.get("_id").toString());
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package com.ecommerce.product;
+
+import com.ecommerce.product.dto.ProductChangeDto;
+import com.ecommerce.product.dto.ProductResponseDto;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+// In-memory inverted index over name, category and description so lookups never scan the products
+// collection. Local save and delete events apply at once, writes made by other instances are
+// pulled from the product change feed on a schedule.
+@Component
+public class ProductSearchIndex extends AbstractMongoEventListener<ProductEntity> {
+
+  private static final int NAME_WEIGHT = 3;
+  private static final int CATEGORY_WEIGHT = 2;
+  private static final int DESCRIPTION_WEIGHT = 1;
+
+  private static final int SYNC_PAGE_SIZE = 1000;
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private ProductChangeFeed productChangeFeed;
+
+  @Value("${app.product-changes.settle-ms}")
+  private long settleMillis;
+
+  // Change feed position this node has applied up to
+  private volatile String syncCursor;
+
+  // token -> product id -> weight, sorted so a prefix is a range scan
+  private final NavigableMap<String, Map<String, Integer>> postings = new ConcurrentSkipListMap<>();
+
+  // product id -> its tokens, used to drop stale postings when a product changes
+  private final Map<String, Map<String, Integer>> productTokens = new ConcurrentHashMap<>();
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    Query query = new Query();
+    query.fields().include("name", "category", "description");
+
+    // Start the feed a settle window before the scan, changes in flight are indexed twice at worst
+    Date scanStart = new Date(System.currentTimeMillis() - settleMillis);
+
+    synchronized (this) {
+      postings.clear();
+      productTokens.clear();
+      syncCursor = productChangeFeed.cursorAt(scanStart);
+      try (Stream<ProductEntity> products = mongoTemplate.stream(query, ProductEntity.class)) {
+        products.forEach(this::index);
+      }
+    }
+  }
+
+  // Applies creates, updates and deletes made on any instance since the last sync
+  @Scheduled(fixedDelayString = "${app.product-changes.sync-interval-ms}")
+  public void syncFromChangeFeed() {
+    if (syncCursor == null) {
+      return;
+    }
+    try {
+      syncCursor =
+          productChangeFeed.forEachPage(
+              syncCursor, SYNC_PAGE_SIZE, changes -> changes.forEach(this::apply));
+    } catch (ResponseStatusException e) {
+      // The cursor outlived the tombstones, only a full scan is complete again
+      rebuild();
+    }
+  }
+
+  private void apply(ProductChangeDto change) {
+    if ("delete".equals(change.getType())) {
+      remove(change.getProductId());
+    } else {
+      ProductResponseDto product = change.getProduct();
+      index(product.getId(), product.getName(), product.getCategory(), product.getDescription());
+    }
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<ProductEntity> event) {
+    index(event.getSource());
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<ProductEntity> event) {
+    Document filter = event.getSource();
+    if (filter.isEmpty()) {
+      synchronized (this) {
+        postings.clear();
+        productTokens.clear();
+      }
+    } else if (filter.get("_id") != null) {
+      remove(filter.get("_id").toString());
+    }
+  }
+
+  // Every query word must match a token prefix, exact token matches and name hits rank higher.
+  // Only the best limit matches are kept, so callers get a bounded id list for any prefix.
+  public List<String> search(String text, int limit) {
+    List<String> words = tokenize(text);
+    if (words.isEmpty()) {
+      return List.of();
+    }
+
+    Map<String, Integer> scores = null;
+    for (String word : words) {
+      Map<String, Integer> wordScores = new HashMap<>();
+      for (Map.Entry<String, Map<String, Integer>> posting :
+          postings.subMap(word, true, word + Character.MAX_VALUE, true).entrySet()) {
+        int exactBonus = posting.getKey().equals(word) ? 2 : 1;
+        posting
+            .getValue()
+            .forEach((id, weight) -> wordScores.merge(id, weight * exactBonus, Math::max));
+      }
+
+      if (scores == null) {
+        scores = wordScores;
+      } else {
+        scores.keySet().retainAll(wordScores.keySet());
+        scores.replaceAll((id, score) -> score + wordScores.get(id));
+      }
+      if (scores.isEmpty()) {
+        return List.of();
+      }
+    }
+
+    Comparator<Map.Entry<String, Integer>> ranking =
+        Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder())
+            .thenComparing(Map.Entry.comparingByKey());
+
+    // Bounded heap with the worst kept match on top
+    PriorityQueue<Map.Entry<String, Integer>> best = new PriorityQueue<>(ranking.reversed());
+    for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+      best.offer(entry);
+      if (best.size() > limit) {
+        best.poll();
+      }
+    }
+
+    List<Map.Entry<String, Integer>> ranked = new ArrayList<>(best);
+    ranked.sort(ranking);
+    return ranked.stream().map(Map.Entry::getKey).toList();
+  }
+
+  private void index(ProductEntity product) {
+    index(product.getId(), product.getName(), product.getCategory(), product.getDescription());
+  }
+
+  private synchronized void index(String id, String name, String category, String description) {
+    remove(id);
+
+    Map<String, Integer> tokens = new HashMap<>();
+    addTokens(tokens, name, NAME_WEIGHT);
+    addTokens(tokens, category, CATEGORY_WEIGHT);
+    addTokens(tokens, description, DESCRIPTION_WEIGHT);
+
+    tokens.forEach(
+        (token, weight) ->
+            postings.computeIfAbsent(token, key -> new ConcurrentHashMap<>()).put(id, weight));
+    productTokens.put(id, tokens);
+  }
+
+  private synchronized void remove(String productId) {
+    Map<String, Integer> tokens = productTokens.remove(productId);
+    if (tokens == null) {
+      return;
+    }
+    for (String token : tokens.keySet()) {
+      Map<String, Integer> ids = postings.get(token);
+      if (ids != null) {
+        ids.remove(productId);
+        if (ids.isEmpty()) {
+          postings.remove(token);
+        }
+      }
+    }
+  }
+
+  private static void addTokens(Map<String, Integer> tokens, String text, int weight) {
+    for (String token : tokenize(text)) {
+      tokens.merge(token, weight, Math::max);
+    }
+  }
+
+  private static List<String> tokenize(String text) {
+    if (text == null) {
+      return List.of();
+    }
+    return Arrays.stream(text.toLowerCase().split("[^\\p{L}\\p{N}]+"))
+        .filter(token -> !token.isEmpty())
+        .distinct()
+        .toList();
+  }
+}
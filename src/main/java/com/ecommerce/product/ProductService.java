@@ -1,13 +1,28 @@
 package com.ecommerce.product;
 
+import com.ecommerce.common.CacheStatsResponse;
+import com.ecommerce.common.Money;
+import com.ecommerce.common.ScrollCursor;
+import com.ecommerce.product.dto.ProductChangesResponseDto;
+import com.ecommerce.product.dto.ProductFacetsResponseDto;
 import com.ecommerce.product.dto.ProductPartialUpdateDto;
 import com.ecommerce.product.dto.ProductRequestDto;
 import com.ecommerce.product.dto.ProductResponseDto;
-import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -15,43 +30,95 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class ProductService {
 
+  private static final int MAX_CHANGES = 1000;
+
   @Autowired private ProductRepository productRepository;
 
+  @Autowired private ProductCache productCache;
+
+  @Autowired private ProductSearchIndex productSearchIndex;
+
+  @Autowired private ProductLoader productLoader;
+
+  @Autowired private ProductFacetCache productFacetCache;
+
+  @Autowired private ProductChangeFeed productChangeFeed;
+
+  @Value("${app.product-search.max-matches}")
+  private int maxSearchMatches;
+
+  @Value("${app.product-facets.price-boundaries}")
+  private List<Double> priceBoundaries;
+
   public ProductResponseDto createProduct(ProductRequestDto requestDto) {
     ProductEntity product = new ProductEntity(requestDto);
-    return productRepository.save(product).toResponseDto();
+    ProductResponseDto savedProduct = productRepository.save(product).toResponseDto();
+    productChangeFeed.recordCatalogChange();
+    return savedProduct;
   }
 
   public ProductEntity getProductById(String id) {
-    return productRepository
-        .findById(id)
+    return productLoader
+        .load(id)
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found"));
   }
 
-  public Page<ProductResponseDto> getAllProducts(
-      String category,
-      BigDecimal minPrice,
-      BigDecimal maxPrice,
-      String searchTerm,
-      Pageable pageable) {
+  public List<ProductResponseDto> searchProducts(String text, int limit) {
+    List<String> ids = productSearchIndex.search(text, limit);
+    Map<String, ProductEntity> products = productLoader.loadAll(ids);
 
-    if (category != null) {
-      return productRepository.findByCategory(category, pageable).map(ProductEntity::toResponseDto);
-    }
+    // Keep the relevance order from the index
+    return ids.stream()
+        .map(products::get)
+        .filter(Objects::nonNull)
+        .map(ProductEntity::toResponseDto)
+        .toList();
+  }
 
-    if (minPrice != null && maxPrice != null) {
-      return productRepository
-          .findByPriceBetween(minPrice, maxPrice, pageable)
-          .map(ProductEntity::toResponseDto);
-    }
+  public Page<ProductResponseDto> getAllProducts(ProductFilter filter, Pageable pageable) {
+    resolveSearchTerm(filter);
+    return productRepository
+        .findByFilter(filter, pageable)
+        .map(product -> product.toResponseDto(filter.getFields()));
+  }
+
+  public Slice<ProductResponseDto> getProductSlice(ProductFilter filter, Pageable pageable) {
+    resolveSearchTerm(filter);
+    return productRepository
+        .findSliceByFilter(filter, pageable)
+        .map(product -> product.toResponseDto(filter.getFields()));
+  }
 
-    if (searchTerm != null) {
-      return productRepository
-          .findByNameContainingIgnoreCase(searchTerm, pageable)
-          .map(ProductEntity::toResponseDto);
+  public Window<ProductResponseDto> getProductsAfter(
+      ProductFilter filter, Sort sort, int size, String cursor) {
+    resolveSearchTerm(filter);
+    return productRepository
+        .scrollByFilter(filter, sort, size, ScrollCursor.decode(cursor))
+        .map(product -> product.toResponseDto(filter.getFields()));
+  }
+
+  public ProductFacetsResponseDto getFacets(ProductFilter filter) {
+    return productFacetCache.get(
+        filter,
+        () -> {
+          resolveSearchTerm(filter);
+          return productRepository.facetsByFilter(filter, priceBoundaries);
+        });
+  }
+
+  public ProductChangesResponseDto getChanges(String since, int limit) {
+    if (limit < 1 || limit > MAX_CHANGES) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_CHANGES);
     }
+    return productChangeFeed.changesSince(since, limit);
+  }
 
-    return productRepository.findAll(pageable).map(ProductEntity::toResponseDto);
+  public Stream<ProductResponseDto> streamProducts(ProductFilter filter, int batchSize) {
+    resolveSearchTerm(filter);
+    return productRepository
+        .streamByFilter(filter, batchSize)
+        .map(product -> product.toResponseDto(filter.getFields()));
   }
 
   public void deleteProduct(String id) {
@@ -59,45 +126,123 @@ public class ProductService {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found");
     }
     productRepository.deleteById(id);
+    productCache.invalidate(id);
+    productLoader.forget(id);
   }
 
-  public ProductResponseDto updateProduct(String id, ProductRequestDto requestDto) {
-    ProductEntity product = getProductById(id);
-
-    product.setName(requestDto.getName());
-    product.setDescription(requestDto.getDescription());
-    product.setPrice(requestDto.getPrice());
-    product.setStockQuantity(requestDto.getStockQuantity());
-    product.setCategory(requestDto.getCategory());
-    product.setActive(requestDto.getActive());
-    product.setUpdatedAt(new Date().toString());
+  public long getCatalogVersion() {
+    return productChangeFeed.catalogVersion();
+  }
 
-    return productRepository.save(product).toResponseDto();
+  public ProductResponseDto updateProduct(String id, ProductRequestDto requestDto, String ifMatch) {
+    ProductEntity product = findProductForUpdate(id);
+    requireMatch(product, ifMatch);
+
+    Update update =
+        new Update()
+            .set("name", requestDto.getName())
+            .set("description", requestDto.getDescription())
+            .set("priceMinor", Money.toMinor(requestDto.getPrice()))
+            .set("category", requestDto.getCategory())
+            .set("active", requestDto.getActive());
+    return applyUpdate(product, update, requestDto.getStockQuantity());
   }
 
-  public ProductResponseDto partialUpdateProduct(String id, ProductPartialUpdateDto requestDto) {
-    ProductEntity product = getProductById(id);
+  public ProductResponseDto partialUpdateProduct(
+      String id, ProductPartialUpdateDto requestDto, String ifMatch) {
+    ProductEntity product = findProductForUpdate(id);
+    requireMatch(product, ifMatch);
 
+    Update update = new Update();
     if (requestDto.getName() != null) {
-      product.setName(requestDto.getName());
+      update.set("name", requestDto.getName());
     }
     if (requestDto.getDescription() != null) {
-      product.setDescription(requestDto.getDescription());
+      update.set("description", requestDto.getDescription());
     }
     if (requestDto.getPrice() != 0) {
-      product.setPrice(requestDto.getPrice());
-    }
-    if (requestDto.getStockQuantity() != 0) {
-      product.setStockQuantity(requestDto.getStockQuantity());
+      update.set("priceMinor", Money.toMinor(requestDto.getPrice()));
     }
     if (requestDto.getCategory() != null) {
-      product.setCategory(requestDto.getCategory());
+      update.set("category", requestDto.getCategory());
     }
     if (requestDto.getActive() != null) {
-      product.setActive(requestDto.getActive());
+      update.set("active", requestDto.getActive());
+    }
+    int stockQuantity =
+        requestDto.getStockQuantity() != 0
+            ? requestDto.getStockQuantity()
+            : product.getStockQuantity();
+    return applyUpdate(product, update, stockQuantity);
+  }
+
+  public CacheStatsResponse getCacheStats() {
+    return productCache.getStats();
+  }
+
+  // Swaps the collection-scanning regex for an id lookup against the search index. Listings page
+  // through the best ranked matches only, a short prefix can't turn into an unbounded $in.
+  private void resolveSearchTerm(ProductFilter filter) {
+    if (filter.getSearchTerm() != null) {
+      filter.setSearchMatches(productSearchIndex.search(filter.getSearchTerm(), maxSearchMatches));
     }
+  }
 
-    product.setUpdatedAt(new Date().toString());
-    return productRepository.save(product).toResponseDto();
+  // If-Match takes a list of strong ETags or *, no header means an unconditional write. The
+  // version condition on the update catches a write that lands between this check and the update.
+  private void requireMatch(ProductEntity product, String ifMatch) {
+    if (ifMatch == null) {
+      return;
+    }
+    boolean matches =
+        Arrays.stream(ifMatch.split(","))
+            .map(String::trim)
+            .anyMatch(tag -> tag.equals("*") || tag.equals(product.eTag()));
+    if (!matches) {
+      throw new ResponseStatusException(
+          HttpStatus.PRECONDITION_FAILED, "Product was modified, reload it and retry");
+    }
+  }
+
+  // Writes load from the repository so cached instances are never mutated in place
+  // The admin's stock figure is applied as the difference from what they were shown, units
+  // reserved or returned since that read are kept instead of being overwritten
+  private ProductResponseDto applyUpdate(ProductEntity product, Update update, int stockQuantity) {
+    update.set("updatedAt", new Date());
+    if (update.modifies("name") || update.modifies("priceMinor")) {
+      update.inc("revision", 1L);
+    }
+    int stockChange = stockQuantity - product.getStockQuantity();
+    ProductEntity savedProduct =
+        productRepository
+            .updateFields(product.getId(), product.getVersion(), update, stockChange)
+            .orElseThrow(() -> updateMissed(product, stockChange));
+    productCache.invalidate(product.getId());
+    productLoader.forget(product.getId());
+    productChangeFeed.recordCatalogChange();
+    return savedProduct.toResponseDto();
+  }
+
+  // The update misses when the version moved or a decrease found too little stock. A version that
+  // still matches leaves only the stock, which a retry can't fix.
+  private RuntimeException updateMissed(ProductEntity product, int stockChange) {
+    boolean versionMatches =
+        stockChange < 0
+            && productRepository
+                .findById(product.getId())
+                .map(current -> Objects.equals(current.getVersion(), product.getVersion()))
+                .orElse(false);
+    if (versionMatches) {
+      return new ResponseStatusException(
+          HttpStatus.CONFLICT, "Insufficient stock quantity to lower the stock by " + -stockChange);
+    }
+    return new OptimisticLockingFailureException(
+        "Product was modified concurrently, reload it and retry");
+  }
+
+  private ProductEntity findProductForUpdate(String id) {
+    return productRepository
+        .findById(id)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found"));
   }
 }
@@ -0,0 +1,25 @@
+package com.ecommerce.product;
+
+import java.util.Date;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Marks a deleted product for the change feed. Kept as long as a feed cursor is honoured.
+@Data
+@NoArgsConstructor
+@Document(collection = "product_tombstones")
+public class ProductTombstoneEntity {
+  // The id of the deleted product
+  @Id private String id;
+
+  @Indexed(name = "deletedAt_ttl", expireAfter = "30d")
+  private Date deletedAt;
+
+  public ProductTombstoneEntity(String id, Date deletedAt) {
+    this.id = id;
+    this.deletedAt = deletedAt;
+  }
+}
@@ -0,0 +1,18 @@
+package com.ecommerce.product.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+public class PriceBucketDto {
+  @Schema(description = "Lowest price in the bucket, inclusive", example = "50.0")
+  private Double min;
+
+  @Schema(
+      description = "Upper price bound, exclusive, null for the open ended bucket",
+      example = "100.0")
+  private Double max;
+
+  @Schema(description = "Number of matching products", example = "12")
+  private long count;
+}
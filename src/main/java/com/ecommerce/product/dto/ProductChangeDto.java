@@ -0,0 +1,22 @@
+package com.ecommerce.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.Date;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductChangeDto {
+  @Schema(description = "upsert or delete", example = "upsert")
+  private String type;
+
+  @Schema(description = "Changed product ID", example = "prod123")
+  private String productId;
+
+  @Schema(description = "When the product was saved or deleted")
+  private Date changedAt;
+
+  @Schema(description = "The product as it is now, absent for deletes")
+  private ProductResponseDto product;
+}
@@ -0,0 +1,14 @@
+package com.ecommerce.product.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import lombok.Data;
+
+@Data
+@Schema(description = "Product changes in the order they happened")
+public class ProductChangesResponseDto {
+  private List<ProductChangeDto> changes;
+
+  @Schema(description = "Pass as since= for the next poll, returned even when nothing changed")
+  private String nextCursor;
+}
@@ -0,0 +1,16 @@
+package com.ecommerce.product.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+
+@Data
+@Schema(description = "Facet counts for the products matching the listing filters")
+public class ProductFacetsResponseDto {
+  @Schema(description = "Number of matching products per category")
+  private Map<String, Long> categories;
+
+  @Schema(description = "Matching products per price range, empty ranges are left out")
+  private List<PriceBucketDto> priceBuckets;
+}
@@ -0,0 +1,46 @@
+package com.ecommerce.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "One line of the bulk import response stream")
+public class ProductImportEventDto {
+  @Schema(description = "progress, error or summary", example = "progress")
+  private String type;
+
+  @Schema(description = "Input line the error belongs to", example = "42")
+  private Long line;
+
+  @Schema(description = "Why the row was rejected", example = "price: Price must be greater than 0")
+  private String message;
+
+  @Schema(description = "Rows read so far", example = "5000")
+  private Long processed;
+
+  @Schema(description = "Rows written so far", example = "4998")
+  private Long upserted;
+
+  @Schema(description = "Rows rejected so far", example = "2")
+  private Long failed;
+
+  public static ProductImportEventDto counts(
+      String type, long processed, long upserted, long failed) {
+    ProductImportEventDto event = new ProductImportEventDto();
+    event.setType(type);
+    event.setProcessed(processed);
+    event.setUpserted(upserted);
+    event.setFailed(failed);
+    return event;
+  }
+
+  public static ProductImportEventDto error(long line, String message) {
+    ProductImportEventDto event = new ProductImportEventDto();
+    event.setType("error");
+    event.setLine(line);
+    event.setMessage(message);
+    return event;
+  }
+}
@@ -1,18 +1,21 @@
 package com.ecommerce.product.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.Date;
 import lombok.Data;
 
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Schema(description = "Product Response Data Transfer Object")
 public class ProductResponseDto {
   private String id;
   private String name;
   private String description;
-  private double price;
+  private Double price;
   private Integer stockQuantity;
   private String category;
   private Boolean active;
-  private String createdAt;
-  private String updatedAt;
+  private Date createdAt;
+  private Date updatedAt;
 }
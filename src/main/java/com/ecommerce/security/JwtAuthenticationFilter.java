@@ -1,14 +1,18 @@
 package com.ecommerce.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -21,16 +25,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
   @Autowired private CustomUserDetailsService customUserDetailsService;
 
+  @Autowired private TokenRevocationChecker tokenRevocationChecker;
+
+  @Value("${app.jwt.stateless-principal}")
+  private boolean statelessPrincipal;
+
   @Override
   protected void doFilterInternal(
       HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
       throws ServletException, IOException {
     try {
       String jwt = getJwtFromRequest(request);
+      Optional<Claims> claims = tokenProvider.parseAndVerify(jwt);
 
-      if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-        String userId = tokenProvider.getUserIdFromToken(jwt);
-        UserDetails userDetails = customUserDetailsService.loadUserById(userId);
+      if (claims.isPresent()) {
+        UserDetails userDetails = loadUserDetails(claims.get());
 
         UsernamePasswordAuthenticationToken authentication =
             new UsernamePasswordAuthenticationToken(
@@ -46,6 +55,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     filterChain.doFilter(request, response);
   }
 
+  private UserDetails loadUserDetails(Claims claims) {
+    if (!statelessPrincipal) {
+      return customUserDetailsService.loadUserById(claims.getSubject());
+    }
+
+    UserPrincipal userPrincipal = tokenProvider.getUserPrincipalFromClaims(claims);
+    if (tokenRevocationChecker.isRevoked(userPrincipal.getId())) {
+      throw new UsernameNotFoundException("User not found with id: " + userPrincipal.getId());
+    }
+    return userPrincipal;
+  }
+
   private String getJwtFromRequest(HttpServletRequest request) {
     String bearerToken = request.getHeader("Authorization");
     if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
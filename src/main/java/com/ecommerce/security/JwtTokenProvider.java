@@ -1,15 +1,28 @@
 package com.ecommerce.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
 @Component
 public class JwtTokenProvider {
@@ -20,11 +33,25 @@ public class JwtTokenProvider {
   @Value("${app.jwt.expiration}")
   private int jwtExpirationInMs;
 
+  @Value("${app.jwt.verified-token-cache-size}")
+  private long verifiedTokenCacheSize;
+
   private Key key;
 
+  private JwtParser jwtParser;
+
+  // SHA-256 digest of a verified token -> its claims, each entry expires at the token's exp
+  private Cache<String, Claims> verifiedTokens;
+
   @PostConstruct
   public void init() {
     this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    this.jwtParser = Jwts.parserBuilder().setSigningKey(key).build();
+    this.verifiedTokens =
+        Caffeine.newBuilder()
+            .maximumSize(verifiedTokenCacheSize)
+            .expireAfter(new ExpiresAtTokenExpiry())
+            .build();
   }
 
   public String generateToken(Authentication authentication) {
@@ -47,22 +74,82 @@ public class JwtTokenProvider {
         .compact();
   }
 
+  // Verifies signature and expiry once, repeated calls with the same token are served from cache
+  public Optional<Claims> parseAndVerify(String token) {
+    if (!StringUtils.hasText(token)) {
+      return Optional.empty();
+    }
+
+    String digest = digest(token);
+    Claims claims = verifiedTokens.getIfPresent(digest);
+    if (claims != null) {
+      return Optional.of(claims);
+    }
+
+    try {
+      claims = jwtParser.parseClaimsJws(token).getBody();
+    } catch (JwtException | IllegalArgumentException ex) {
+      return Optional.empty();
+    }
+
+    verifiedTokens.put(digest, claims);
+    return Optional.of(claims);
+  }
+
   public String getUserIdFromToken(String token) {
-    Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+    return parseAndVerify(token)
+        .map(Claims::getSubject)
+        .orElseThrow(() -> new MalformedJwtException("Invalid JWT token"));
+  }
+
+  // Rebuild the principal from the signed claims written by generateToken, without a user lookup
+  public UserPrincipal getUserPrincipalFromClaims(Claims claims) {
+    String roles = claims.get("roles", String.class);
+    Set<SimpleGrantedAuthority> authorities =
+        Arrays.stream(roles == null ? new String[0] : roles.split(","))
+            .filter(StringUtils::hasText)
+            .map(SimpleGrantedAuthority::new)
+            .collect(Collectors.toSet());
 
-    return claims.getSubject();
+    return new UserPrincipal(
+        claims.getSubject(), claims.get("email", String.class), null, authorities);
   }
 
   public boolean validateToken(String authToken) {
+    return parseAndVerify(authToken).isPresent();
+  }
+
+  private String digest(String token) {
     try {
-      Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(authToken);
-      return true;
-    } catch (SecurityException
-        | MalformedJwtException
-        | ExpiredJwtException
-        | UnsupportedJwtException
-        | IllegalArgumentException ex) {
-      return false;
+      MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = messageDigest.digest(token.getBytes(StandardCharsets.UTF_8));
+      return Base64.getEncoder().encodeToString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private static class ExpiresAtTokenExpiry implements Expiry<String, Claims> {
+    @Override
+    public long expireAfterCreate(String digest, Claims claims, long currentTime) {
+      Date expiration = claims.getExpiration();
+      if (expiration == null) {
+        return 0;
+      }
+      long remainingMs = expiration.getTime() - System.currentTimeMillis();
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMs, 0));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String digest, Claims claims, long currentTime, long currentDuration) {
+      return expireAfterCreate(digest, claims, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String digest, Claims claims, long currentTime, long currentDuration) {
+      return currentDuration;
     }
   }
 }
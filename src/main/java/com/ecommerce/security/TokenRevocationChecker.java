@@ -0,0 +1,42 @@
+package com.ecommerce.security;
+
+import com.ecommerce.users.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TokenRevocationChecker {
+
+  @Autowired private UserRepository userRepository;
+
+  @Value("${app.jwt.revocation-check-ttl-seconds}")
+  private long revocationCheckTtlSeconds;
+
+  private Cache<String, Boolean> activeUsers;
+
+  @PostConstruct
+  public void init() {
+    this.activeUsers =
+        Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofSeconds(revocationCheckTtlSeconds))
+            .build();
+  }
+
+  // A token is revoked once its user no longer exists, re-checked at most once per TTL per user
+  public boolean isRevoked(String userId) {
+    if (revocationCheckTtlSeconds <= 0) {
+      return false;
+    }
+    return !activeUsers.get(userId, userRepository::existsById);
+  }
+
+  public void evict(String userId) {
+    activeUsers.invalidate(userId);
+  }
+}
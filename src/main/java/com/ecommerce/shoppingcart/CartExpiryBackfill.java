@@ -0,0 +1,28 @@
+package com.ecommerce.shoppingcart;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.util.Date;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+// The TTL index skips documents without lastModified, so carts from before the field existed
+// are stamped once and expire like any other idle cart
+@Component
+public class CartExpiryBackfill {
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void stampMissingLastModified() {
+    mongoTemplate.updateMulti(
+        Query.query(where("lastModified").exists(false)),
+        new Update().set("lastModified", new Date()),
+        ShoppingCartEntity.class);
+  }
+}
@@ -0,0 +1,53 @@
+package com.ecommerce.shoppingcart;
+
+import com.ecommerce.product.ProductEntity;
+import com.ecommerce.shoppingcart.dto.CartItemRequestDto;
+import com.ecommerce.shoppingcart.dto.CartItemResponseDto;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+class CartItem {
+  private String productId;
+  private int quantity;
+  // Product details as of productRevision, re-taken only once the product's name or price moves
+  private String productName;
+  private Long unitPriceMinor;
+  private Long productRevision;
+
+  static CartItem snapshot(ProductEntity product, int quantity) {
+    CartItem item = new CartItem();
+    item.setProductId(product.getId());
+    item.setQuantity(quantity);
+    item.takeSnapshot(product);
+    return item;
+  }
+
+  void takeSnapshot(ProductEntity product) {
+    this.productName = product.getName();
+    this.unitPriceMinor = product.getPriceMinor();
+    this.productRevision = product.getRevision();
+  }
+
+  // The product is gone, the line stays but is no longer priced
+  void dropSnapshot() {
+    this.unitPriceMinor = null;
+    this.productRevision = null;
+  }
+
+  // Constructor from RequestDto
+  public CartItem(CartItemRequestDto requestDto) {
+    this.productId = requestDto.getProductId();
+    this.quantity = requestDto.getQuantity();
+  }
+
+  // Convert to ResponseDto
+  public CartItemResponseDto toResponse() {
+    CartItemResponseDto responseDto = new CartItemResponseDto();
+    responseDto.setProductId(this.productId);
+    responseDto.setQuantity(this.quantity);
+    // Note: product name and prices will need to be set from product service
+    return responseDto;
+  }
+}
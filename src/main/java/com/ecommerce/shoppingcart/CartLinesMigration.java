@@ -0,0 +1,54 @@
+package com.ecommerce.shoppingcart;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+// Moves carts still using the items array to lines keyed by productId the first time they load
+@Component
+public class CartLinesMigration extends AbstractMongoEventListener<ShoppingCartEntity> {
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Override
+  public void onAfterConvert(AfterConvertEvent<ShoppingCartEntity> event) {
+    ShoppingCartEntity cart = event.getSource();
+    List<CartItem> legacyItems = cart.getLegacyItems();
+    if (legacyItems == null) {
+      return;
+    }
+
+    // Quantities are added so a line pushed before the migration ran is merged, not replaced.
+    // Only the update that still finds the items array applies them.
+    Update update = new Update().unset("items");
+    for (CartItem item : legacyItems) {
+      String line = "lines." + item.getProductId();
+      update
+          .set(line + ".productId", item.getProductId())
+          .inc(line + ".quantity", item.getQuantity());
+    }
+    mongoTemplate.updateFirst(
+        Query.query(where("id").is(cart.getId()).and("items").exists(true)),
+        update,
+        ShoppingCartEntity.class);
+
+    for (CartItem item : legacyItems) {
+      cart.getLines()
+          .merge(
+              item.getProductId(),
+              item,
+              (line, legacy) -> {
+                line.setQuantity(line.getQuantity() + legacy.getQuantity());
+                return line;
+              });
+    }
+    cart.setLegacyItems(null);
+  }
+}
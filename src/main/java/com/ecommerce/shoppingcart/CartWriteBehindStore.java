@@ -0,0 +1,334 @@
+package com.ecommerce.shoppingcart;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Keeps active carts in memory and writes changed carts back to shopping_carts in bulk. Only one
+// instance may serve a given cart while this is enabled.
+@Slf4j
+@Component
+public class CartWriteBehindStore {
+
+  private static final int STRIPES = 64;
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Value("${app.cart-store.write-behind.enabled}")
+  private boolean enabled;
+
+  @Value("${app.cart-store.flush-threshold}")
+  private int flushThreshold;
+
+  @Value("${app.cart-store.idle-seconds}")
+  private long idleSeconds;
+
+  private final Map<String, ShoppingCartEntity> carts = new ConcurrentHashMap<>();
+  private final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+  private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+  private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+  // userId -> id of that user's default cart, once it has been looked up
+  private final Map<String, String> defaultCarts = new ConcurrentHashMap<>();
+
+  // A cart is only read, changed or snapshotted while holding the lock of its stripe
+  private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+  private final ReentrantLock flushLock = new ReentrantLock();
+
+  public CartWriteBehindStore() {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public Optional<ShoppingCartEntity> find(String cartId) {
+    ReentrantLock lock = stripe(cartId);
+    lock.lock();
+    try {
+      return Optional.ofNullable(load(cartId)).map(CartWriteBehindStore::copy);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public ShoppingCartEntity save(ShoppingCartEntity cart) {
+    if (cart.getId() == null) {
+      cart.setId(new ObjectId().toHexString());
+    }
+    ReentrantLock lock = stripe(cart.getId());
+    lock.lock();
+    try {
+      carts.put(cart.getId(), copy(cart));
+      markDirty(cart.getId());
+    } finally {
+      lock.unlock();
+    }
+    flushIfThresholdReached();
+    return cart;
+  }
+
+  // Applies the change if it returns true and hands back a copy of the changed cart
+  public Optional<ShoppingCartEntity> mutate(String cartId, Predicate<ShoppingCartEntity> change) {
+    Optional<ShoppingCartEntity> changed;
+    ReentrantLock lock = stripe(cartId);
+    lock.lock();
+    try {
+      ShoppingCartEntity cart = load(cartId);
+      if (cart == null || !change.test(cart)) {
+        return Optional.empty();
+      }
+      cart.setLastModified(new Date());
+      markDirty(cartId);
+      changed = Optional.of(copy(cart));
+    } finally {
+      lock.unlock();
+    }
+    flushIfThresholdReached();
+    return changed;
+  }
+
+  // Changes the cached cart without counting as a change, lastModified and with it the TTL stay
+  // put and nothing is queued. A cart not written since goes out with its next change, or is
+  // re-read from Mongo and changed again once evicted.
+  public void refresh(String cartId, Consumer<ShoppingCartEntity> change) {
+    ReentrantLock lock = stripe(cartId);
+    lock.lock();
+    try {
+      ShoppingCartEntity cart = load(cartId);
+      if (cart != null) {
+        change.accept(cart);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // The first lookup for a user writes pending carts back, so the claim also sees carts that so
+  // far only exist in memory. The marker is copied onto the cached cart as well, otherwise its
+  // next write-back would replace the stored cart without it.
+  public String findDefaultCartId(String userId, Supplier<String> claim) {
+    String cartId = defaultCarts.get(userId);
+    if (cartId != null && find(cartId).isPresent()) {
+      return cartId;
+    }
+
+    flushLock.lock();
+    try {
+      writeBack();
+      cartId = claim.get();
+      ReentrantLock lock = stripe(cartId);
+      lock.lock();
+      try {
+        ShoppingCartEntity cart = carts.get(cartId);
+        if (cart != null) {
+          cart.setDefaultFor(userId);
+        }
+      } finally {
+        lock.unlock();
+      }
+      defaultCarts.put(userId, cartId);
+      return cartId;
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  public void delete(String cartId) {
+    ReentrantLock lock = stripe(cartId);
+    lock.lock();
+    try {
+      defaultCarts.values().remove(cartId);
+      carts.remove(cartId);
+      lastAccess.remove(cartId);
+      dirty.remove(cartId);
+      deleted.add(cartId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Held under the flush lock so a flush in progress can't write a removed cart back
+  public void deleteByUserId(String userId) {
+    flushLock.lock();
+    try {
+      defaultCarts.remove(userId);
+      for (ShoppingCartEntity cart : new ArrayList<>(carts.values())) {
+        if (userId.equals(cart.getUserId())) {
+          delete(cart.getId());
+        }
+      }
+      mongoTemplate.remove(Query.query(where("userId").is(userId)), ShoppingCartEntity.class);
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${app.cart-store.flush-interval-ms}")
+  public void flush() {
+    if (!enabled) {
+      return;
+    }
+    flushLock.lock();
+    try {
+      writeBack();
+      evictIdle();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  @PreDestroy
+  public void flushOnShutdown() {
+    flush();
+  }
+
+  private void flushIfThresholdReached() {
+    // Only one request pays for the flush, the others carry on
+    if (dirty.size() >= flushThreshold && flushLock.tryLock()) {
+      try {
+        writeBack();
+      } finally {
+        flushLock.unlock();
+      }
+    }
+  }
+
+  private void writeBack() {
+    List<ShoppingCartEntity> upserts = new ArrayList<>();
+    for (String cartId : new ArrayList<>(dirty)) {
+      ReentrantLock lock = stripe(cartId);
+      lock.lock();
+      try {
+        ShoppingCartEntity cart = carts.get(cartId);
+        if (dirty.remove(cartId) && cart != null) {
+          upserts.add(copy(cart));
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    List<String> removals = new ArrayList<>(deleted);
+    deleted.removeAll(removals);
+
+    if (upserts.isEmpty() && removals.isEmpty()) {
+      return;
+    }
+
+    BulkOperations bulk =
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ShoppingCartEntity.class);
+    for (ShoppingCartEntity cart : upserts) {
+      bulk.replaceOne(
+          Query.query(where("id").is(cart.getId())),
+          cart,
+          FindAndReplaceOptions.options().upsert());
+    }
+    if (!removals.isEmpty()) {
+      bulk.remove(Query.query(where("id").in(removals)));
+    }
+
+    try {
+      bulk.execute();
+    } catch (RuntimeException ex) {
+      // Keep the changes pending so the next flush tries again
+      log.error("Cart write-back failed: {}", ex.getMessage());
+      upserts.forEach(cart -> dirty.add(cart.getId()));
+      deleted.addAll(removals);
+    }
+  }
+
+  private void evictIdle() {
+    long cutoff = System.currentTimeMillis() - idleSeconds * 1000;
+    for (Map.Entry<String, Long> access : new ArrayList<>(lastAccess.entrySet())) {
+      if (access.getValue() >= cutoff) {
+        continue;
+      }
+      String cartId = access.getKey();
+      ReentrantLock lock = stripe(cartId);
+      lock.lock();
+      try {
+        if (!dirty.contains(cartId) && lastAccess.getOrDefault(cartId, 0L) < cutoff) {
+          carts.remove(cartId);
+          lastAccess.remove(cartId);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private ShoppingCartEntity load(String cartId) {
+    lastAccess.put(cartId, System.currentTimeMillis());
+    ShoppingCartEntity cart = carts.get(cartId);
+    if (cart == null && !deleted.contains(cartId)) {
+      cart = mongoTemplate.findById(cartId, ShoppingCartEntity.class);
+      if (cart != null) {
+        carts.put(cartId, cart);
+      }
+    }
+    if (cart == null) {
+      lastAccess.remove(cartId);
+    }
+    return cart;
+  }
+
+  private void markDirty(String cartId) {
+    dirty.add(cartId);
+    deleted.remove(cartId);
+    lastAccess.put(cartId, System.currentTimeMillis());
+  }
+
+  private ReentrantLock stripe(String cartId) {
+    return stripes[Math.floorMod(cartId.hashCode(), STRIPES)];
+  }
+
+  // Callers get their own copy so a later change never shows through a returned cart
+  private static ShoppingCartEntity copy(ShoppingCartEntity cart) {
+    ShoppingCartEntity copy = new ShoppingCartEntity();
+    copy.setId(cart.getId());
+    copy.setUserId(cart.getUserId());
+    copy.setDefaultFor(cart.getDefaultFor());
+    copy.setCreatedAt(cart.getCreatedAt());
+    copy.setLastModified(cart.getLastModified());
+
+    Map<String, CartItem> lines = new LinkedHashMap<>();
+    cart.getLines()
+        .forEach(
+            (productId, line) -> {
+              CartItem item = new CartItem();
+              item.setProductId(line.getProductId());
+              item.setQuantity(line.getQuantity());
+              item.setProductName(line.getProductName());
+              item.setUnitPriceMinor(line.getUnitPriceMinor());
+              item.setProductRevision(line.getProductRevision());
+              lines.put(productId, item);
+            });
+    copy.setLines(lines);
+    return copy;
+  }
+}
@@ -1,12 +1,17 @@
 package com.ecommerce.shoppingcart;
 
+import com.ecommerce.common.Money;
+import com.ecommerce.shoppingcart.dto.CartBatchRequestDto;
 import com.ecommerce.shoppingcart.dto.CartItemRequestDto;
+import com.ecommerce.shoppingcart.dto.CartSummaryResponseDto;
 import com.ecommerce.shoppingcart.dto.ShoppingCartResponseDto;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/api/v1/ecommerce/shopping-carts")
@@ -27,10 +32,37 @@ public class ShoppingCartController {
 
   @PostMapping("/{cartId}/items")
   public ResponseEntity<ShoppingCartResponseDto> addItemToCart(
-      @PathVariable String cartId, @RequestBody CartItemRequestDto itemRequest) {
+      @PathVariable String cartId, @RequestBody @Valid CartItemRequestDto itemRequest) {
     return ResponseEntity.ok(cartService.addItemToCart(cartId, itemRequest));
   }
 
+  // Polled for the header badge, the ETag is the summary itself so an unchanged cart gets a 304
+  @GetMapping("/{cartId}/summary")
+  public ResponseEntity<CartSummaryResponseDto> getCartSummary(
+      @PathVariable String cartId, WebRequest request) {
+    CartSummaryResponseDto summary = cartService.getCartSummary(cartId);
+    String eTag =
+        "\"" + summary.getTotalItems() + "-" + Money.toMinor(summary.getTotalPrice()) + "\"";
+    if (request.checkNotModified(eTag)) {
+      return null;
+    }
+    return ResponseEntity.ok().eTag(eTag).body(summary);
+  }
+
+  // Adds to the user's cart, creating the cart on the first add
+  @PostMapping("/users/{userId}/items")
+  public ResponseEntity<ShoppingCartResponseDto> addItemToUserCart(
+      @PathVariable String userId, @RequestBody @Valid CartItemRequestDto itemRequest) {
+    return ResponseEntity.ok(cartService.addItemToUserCart(userId, itemRequest));
+  }
+
+  // Applies a list of add, update and remove operations in one atomic cart write
+  @PostMapping("/{cartId}/items/batch")
+  public ResponseEntity<ShoppingCartResponseDto> applyBatch(
+      @PathVariable String cartId, @RequestBody @Valid CartBatchRequestDto batchRequest) {
+    return ResponseEntity.ok(cartService.applyBatch(cartId, batchRequest));
+  }
+
   @DeleteMapping("/{cartId}/items/{productId}")
   public ResponseEntity<ShoppingCartResponseDto> removeItemFromCart(
       @PathVariable String cartId, @PathVariable String productId) {
@@ -39,7 +71,7 @@ public class ShoppingCartController {
 
   @PutMapping("/{cartId}/items")
   public ResponseEntity<ShoppingCartResponseDto> updateItemQuantity(
-      @PathVariable String cartId, @RequestBody CartItemRequestDto itemRequest) {
+      @PathVariable String cartId, @RequestBody @Valid CartItemRequestDto itemRequest) {
     return ResponseEntity.ok(cartService.updateItemQuantity(cartId, itemRequest));
   }
 
@@ -1,25 +1,45 @@
 package com.ecommerce.shoppingcart;
 
-import com.ecommerce.shoppingcart.dto.CartItemRequestDto;
+import com.ecommerce.common.Money;
 import com.ecommerce.shoppingcart.dto.CartItemResponseDto;
+import com.ecommerce.shoppingcart.dto.CartSummaryResponseDto;
 import com.ecommerce.shoppingcart.dto.ShoppingCartResponseDto;
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
 
 @Data
 @Document(collection = "shopping_carts")
 @NoArgsConstructor
 public class ShoppingCartEntity {
   @Id private String id;
-  private String userId;
-  private List<CartItem> items = new ArrayList<>();
-  private String createdAt = new Date().toString();
+  @Indexed private String userId;
+
+  // Set to userId on the cart that the user scoped endpoints add to. Unique, so concurrent first
+  // adds can't both create one, and unset on further carts made through createCart.
+  @Indexed(unique = true, sparse = true)
+  private String defaultFor;
+
+  // Lines keyed by productId, so one line is read or updated directly at lines.<productId>
+  private Map<String, CartItem> lines = new LinkedHashMap<>();
+
+  // Former array layout, folded into lines by CartLinesMigration when the cart is loaded
+  @Field("items")
+  private List<CartItem> legacyItems;
+
+  private Date createdAt = new Date();
+
+  // Set on every change, carts left untouched for 30 days are removed by Mongo's TTL monitor
+  @Indexed(name = "lastModified_ttl", expireAfter = "30d")
+  private Date lastModified = new Date();
 
   // Convert to ResponseDto
   public ShoppingCartResponseDto toResponse() {
@@ -30,35 +50,30 @@ public class ShoppingCartEntity {
 
     // Convert cart items
     List<CartItemResponseDto> itemResponses =
-        this.items.stream().map(CartItem::toResponse).collect(Collectors.toList());
+        this.lines.values().stream().map(CartItem::toResponse).collect(Collectors.toList());
     responseDto.setItems(itemResponses);
 
     // Calculate totals
-    responseDto.setTotalItems(this.items.stream().mapToInt(CartItem::getQuantity).sum());
+    responseDto.setTotalItems(this.lines.values().stream().mapToInt(CartItem::getQuantity).sum());
 
     // Note: totalPrice will need to be calculated with product prices from product service
     return responseDto;
   }
-}
 
-@Data
-@NoArgsConstructor
-class CartItem {
-  private String productId;
-  private int quantity;
-
-  // Constructor from RequestDto
-  public CartItem(CartItemRequestDto requestDto) {
-    this.productId = requestDto.getProductId();
-    this.quantity = requestDto.getQuantity();
-  }
+  // Totals from the line snapshots, lines without a price (a deleted product, or a legacy line not
+  // yet re-priced) count as items but add nothing
+  public CartSummaryResponseDto toSummary() {
+    long totalPriceMinor = 0;
+    for (CartItem line : this.lines.values()) {
+      if (line.getUnitPriceMinor() != null) {
+        totalPriceMinor += line.getUnitPriceMinor() * line.getQuantity();
+      }
+    }
 
-  // Convert to ResponseDto
-  public CartItemResponseDto toResponse() {
-    CartItemResponseDto responseDto = new CartItemResponseDto();
-    responseDto.setProductId(this.productId);
-    responseDto.setQuantity(this.quantity);
-    // Note: product name and prices will need to be set from product service
-    return responseDto;
+    CartSummaryResponseDto summaryDto = new CartSummaryResponseDto();
+    summaryDto.setId(this.id);
+    summaryDto.setTotalItems(this.lines.values().stream().mapToInt(CartItem::getQuantity).sum());
+    summaryDto.setTotalPrice(Money.toMajor(totalPriceMinor));
+    return summaryDto;
   }
 }
@@ -1,9 +1,23 @@
 package com.ecommerce.shoppingcart;
 
+import java.util.Optional;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface ShoppingCartRepository extends MongoRepository<ShoppingCartEntity, String> {
-  void deleteByUserId(String userId);
+public interface ShoppingCartRepository
+    extends MongoRepository<ShoppingCartEntity, String>, ShoppingCartRepositoryCustom {
+
+  // Redeclared so these resolve to ShoppingCartRepositoryCustomImpl, not the Mongo base methods
+  @Override
+  <S extends ShoppingCartEntity> S save(S cart);
+
+  @Override
+  Optional<ShoppingCartEntity> findById(String cartId);
+
+  @Override
+  boolean existsById(String cartId);
+
+  @Override
+  void deleteById(String cartId);
 }
@@ -0,0 +1,42 @@
+package com.ecommerce.shoppingcart;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Cart reads and writes that go through the write-behind store when it is enabled. Mutations
+// return the updated cart or empty if nothing matched.
+public interface ShoppingCartRepositoryCustom {
+  <S extends ShoppingCartEntity> S save(S cart);
+
+  Optional<ShoppingCartEntity> findById(String cartId);
+
+  boolean existsById(String cartId);
+
+  void deleteById(String cartId);
+
+  void deleteByUserId(String userId);
+
+  // Returns the id of the user's default cart, adopting their latest cart or creating an empty
+  // one if none is marked yet
+  String findOrCreateCartIdForUser(String userId);
+
+  Optional<ShoppingCartEntity> incrementItemQuantity(String cartId, String productId, int quantity);
+
+  Optional<ShoppingCartEntity> pushItem(String cartId, CartItem line);
+
+  Optional<ShoppingCartEntity> setItemQuantity(String cartId, String productId, int quantity);
+
+  // Empty if the cart is gone or doesn't have the line
+  Optional<ShoppingCartEntity> pullItem(String cartId, String productId);
+
+  Optional<ShoppingCartEntity> clearItems(String cartId);
+
+  // Expected quantities per productId, null when the line is absent. Updated lines only set the
+  // quantity of an existing line or add the whole line, null removes it.
+  Optional<ShoppingCartEntity> applyLineQuantities(
+      String cartId, Map<String, Integer> expected, Map<String, CartItem> updated);
+
+  // Saves re-taken price snapshots onto lines that still exist, without counting as a change
+  void refreshLineSnapshots(String cartId, List<CartItem> lines);
+}
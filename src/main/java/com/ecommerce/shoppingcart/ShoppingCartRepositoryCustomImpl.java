@@ -0,0 +1,327 @@
+package com.ecommerce.shoppingcart;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+// Each operation runs against the write-behind store when it is enabled, otherwise as a single
+// Mongo round trip
+public class ShoppingCartRepositoryCustomImpl implements ShoppingCartRepositoryCustom {
+
+  private static final FindAndModifyOptions RETURN_NEW =
+      FindAndModifyOptions.options().returnNew(true);
+
+  private static final FindAndModifyOptions UPSERT =
+      FindAndModifyOptions.options().upsert(true).returnNew(true);
+
+  private static final int MAX_CLAIM_ATTEMPTS = 3;
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private CartWriteBehindStore cartStore;
+
+  @Override
+  public <S extends ShoppingCartEntity> S save(S cart) {
+    if (cartStore.isEnabled()) {
+      cartStore.save(cart);
+      return cart;
+    }
+    return mongoTemplate.save(cart);
+  }
+
+  @Override
+  public Optional<ShoppingCartEntity> findById(String cartId) {
+    if (cartStore.isEnabled()) {
+      return cartStore.find(cartId);
+    }
+    return Optional.ofNullable(mongoTemplate.findById(cartId, ShoppingCartEntity.class));
+  }
+
+  @Override
+  public boolean existsById(String cartId) {
+    if (cartStore.isEnabled()) {
+      return cartStore.find(cartId).isPresent();
+    }
+    return mongoTemplate.exists(Query.query(where("id").is(cartId)), ShoppingCartEntity.class);
+  }
+
+  @Override
+  public void deleteById(String cartId) {
+    if (cartStore.isEnabled()) {
+      cartStore.delete(cartId);
+      return;
+    }
+    mongoTemplate.remove(Query.query(where("id").is(cartId)), ShoppingCartEntity.class);
+  }
+
+  @Override
+  public void deleteByUserId(String userId) {
+    if (cartStore.isEnabled()) {
+      cartStore.deleteByUserId(userId);
+      return;
+    }
+    mongoTemplate.remove(Query.query(where("userId").is(userId)), ShoppingCartEntity.class);
+  }
+
+  @Override
+  public String findOrCreateCartIdForUser(String userId) {
+    if (cartStore.isEnabled()) {
+      return cartStore.findDefaultCartId(userId, () -> claimDefaultCart(userId));
+    }
+    return claimDefaultCart(userId);
+  }
+
+  // The user's default cart, otherwise their most recently changed cart becomes it, otherwise a
+  // new empty cart is created. The unique defaultFor index turns a concurrent claim into a
+  // DuplicateKeyException, the next attempt then finds the winner's cart.
+  private String claimDefaultCart(String userId) {
+    Query current = Query.query(where("defaultFor").is(userId));
+    current.fields().include("id");
+
+    for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+      try {
+        ShoppingCartEntity cart = mongoTemplate.findOne(current, ShoppingCartEntity.class);
+        if (cart != null) {
+          return cart.getId();
+        }
+
+        Query latest =
+            Query.query(where("userId").is(userId).and("defaultFor").exists(false))
+                .with(Sort.by(Sort.Direction.DESC, "lastModified"));
+        latest.fields().include("id");
+        cart =
+            mongoTemplate.findAndModify(
+                latest, new Update().set("defaultFor", userId), ShoppingCartEntity.class);
+        if (cart != null) {
+          return cart.getId();
+        }
+
+        ShoppingCartEntity newCart = new ShoppingCartEntity();
+        Update update =
+            new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("lines", newCart.getLines())
+                .setOnInsert("createdAt", newCart.getCreatedAt())
+                .setOnInsert("lastModified", newCart.getLastModified());
+        return mongoTemplate
+            .findAndModify(current, update, UPSERT, ShoppingCartEntity.class)
+            .getId();
+      } catch (DuplicateKeyException ex) {
+        // Another request claimed a default cart for this user first
+      }
+    }
+    throw new OptimisticLockingFailureException(
+        "Default cart of user " + userId + " was claimed concurrently, please retry");
+  }
+
+  @Override
+  public Optional<ShoppingCartEntity> incrementItemQuantity(
+      String cartId, String productId, int quantity) {
+    if (cartStore.isEnabled()) {
+      return cartStore.mutate(
+          cartId,
+          cart -> {
+            CartItem line = cart.getLines().get(productId);
+            if (line == null) {
+              return false;
+            }
+            line.setQuantity(line.getQuantity() + quantity);
+            return true;
+          });
+    }
+
+    // Only matches while the cart already has a line for this product
+    Query query = Query.query(where("id").is(cartId).and(line(productId)).exists(true));
+    Update update = new Update().inc(line(productId) + ".quantity", quantity);
+    return findAndModify(query, update);
+  }
+
+  @Override
+  public Optional<ShoppingCartEntity> pushItem(String cartId, CartItem item) {
+    String productId = item.getProductId();
+    if (cartStore.isEnabled()) {
+      return cartStore.mutate(cartId, cart -> cart.getLines().putIfAbsent(productId, item) == null);
+    }
+
+    // Only matches while the cart has no line for this product yet
+    Query query = Query.query(where("id").is(cartId).and(line(productId)).exists(false));
+    Update update = new Update().set(line(productId), item);
+    return findAndModify(query, update);
+  }
+
+  @Override
+  public Optional<ShoppingCartEntity> setItemQuantity(
+      String cartId, String productId, int quantity) {
+    if (cartStore.isEnabled()) {
+      return cartStore.mutate(
+          cartId,
+          cart -> {
+            CartItem line = cart.getLines().get(productId);
+            if (line == null) {
+              return false;
+            }
+            line.setQuantity(quantity);
+            return true;
+          });
+    }
+
+    Query query = Query.query(where("id").is(cartId).and(line(productId)).exists(true));
+    Update update = new Update().set(line(productId) + ".quantity", quantity);
+    return findAndModify(query, update);
+  }
+
+  @Override
+  public Optional<ShoppingCartEntity> pullItem(String cartId, String productId) {
+    if (cartStore.isEnabled()) {
+      return cartStore.mutate(cartId, cart -> cart.getLines().remove(productId) != null);
+    }
+
+    // Only matches while the cart has the line. Also drops it from a not yet migrated cart so the
+    // migration can't bring it back.
+    Query query =
+        Query.query(
+            where("id")
+                .is(cartId)
+                .orOperator(
+                    where(line(productId)).exists(true), where("items.productId").is(productId)));
+    Update update =
+        new Update()
+            .unset(line(productId))
+            .pull("items", Query.query(where("productId").is(productId)));
+    return findAndModify(query, update);
+  }
+
+  @Override
+  public Optional<ShoppingCartEntity> clearItems(String cartId) {
+    if (cartStore.isEnabled()) {
+      return cartStore.mutate(
+          cartId,
+          cart -> {
+            cart.getLines().clear();
+            return true;
+          });
+    }
+
+    Query query = Query.query(where("id").is(cartId));
+    Update update = new Update().set("lines", new LinkedHashMap<>()).unset("items");
+    return findAndModify(query, update);
+  }
+
+  @Override
+  public Optional<ShoppingCartEntity> applyLineQuantities(
+      String cartId, Map<String, Integer> expected, Map<String, CartItem> updated) {
+    if (cartStore.isEnabled()) {
+      return cartStore.mutate(cartId, cart -> applyInMemory(cart, expected, updated));
+    }
+
+    // Only matches while every touched line is still as it was when the changes were computed
+    Criteria criteria = where("id").is(cartId);
+    expected.forEach(
+        (productId, quantity) -> {
+          if (quantity == null) {
+            criteria.and(line(productId)).exists(false);
+          } else {
+            criteria.and(line(productId) + ".quantity").is(quantity);
+          }
+        });
+
+    Update update = new Update();
+    updated.forEach(
+        (productId, item) -> {
+          if (item == null) {
+            update.unset(line(productId));
+          } else if (expected.get(productId) == null) {
+            update.set(line(productId), item);
+          } else {
+            update.set(line(productId) + ".quantity", item.getQuantity());
+          }
+        });
+    return findAndModify(Query.query(criteria), update);
+  }
+
+  @Override
+  public void refreshLineSnapshots(String cartId, List<CartItem> lines) {
+    if (cartStore.isEnabled()) {
+      cartStore.refresh(
+          cartId,
+          cart ->
+              lines.forEach(
+                  item -> {
+                    CartItem line = cart.getLines().get(item.getProductId());
+                    if (line != null) {
+                      line.setProductName(item.getProductName());
+                      line.setUnitPriceMinor(item.getUnitPriceMinor());
+                      line.setProductRevision(item.getProductRevision());
+                    }
+                  }));
+      return;
+    }
+
+    // Skipped if any of the lines was removed meanwhile, the next read re-prices again
+    Criteria criteria = where("id").is(cartId);
+    Update update = new Update();
+    for (CartItem item : lines) {
+      String line = line(item.getProductId());
+      criteria.and(line).exists(true);
+      update
+          .set(line + ".productName", item.getProductName())
+          .set(line + ".unitPriceMinor", item.getUnitPriceMinor())
+          .set(line + ".productRevision", item.getProductRevision());
+    }
+    mongoTemplate.updateFirst(Query.query(criteria), update, ShoppingCartEntity.class);
+  }
+
+  private static boolean applyInMemory(
+      ShoppingCartEntity cart, Map<String, Integer> expected, Map<String, CartItem> updated) {
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      CartItem line = cart.getLines().get(entry.getKey());
+      if (!Objects.equals(line == null ? null : line.getQuantity(), entry.getValue())) {
+        return false;
+      }
+    }
+
+    updated.forEach(
+        (productId, item) -> {
+          CartItem line = cart.getLines().get(productId);
+          if (item == null) {
+            cart.getLines().remove(productId);
+          } else if (line == null) {
+            cart.getLines().put(productId, item);
+          } else {
+            line.setQuantity(item.getQuantity());
+          }
+        });
+    return true;
+  }
+
+  // The id becomes part of a field path, a '.' or a leading '$' would address another field
+  private static String line(String productId) {
+    if (productId == null || !ObjectId.isValid(productId)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid product id");
+    }
+    return "lines." + productId;
+  }
+
+  private Optional<ShoppingCartEntity> findAndModify(Query query, Update update) {
+    update.set("lastModified", new Date());
+    return Optional.ofNullable(
+        mongoTemplate.findAndModify(query, update, RETURN_NEW, ShoppingCartEntity.class));
+  }
+}
@@ -1,10 +1,26 @@
 package com.ecommerce.shoppingcart;
 
+import com.ecommerce.common.Money;
+import com.ecommerce.inventory.InventoryService;
 import com.ecommerce.product.ProductEntity;
-import com.ecommerce.product.ProductRepository;
+import com.ecommerce.product.ProductLoader;
+import com.ecommerce.product.ProductRevisionIndex;
+import com.ecommerce.shoppingcart.dto.CartBatchRequestDto;
+import com.ecommerce.shoppingcart.dto.CartItemOperationDto;
 import com.ecommerce.shoppingcart.dto.CartItemRequestDto;
 import com.ecommerce.shoppingcart.dto.CartItemResponseDto;
+import com.ecommerce.shoppingcart.dto.CartOperationType;
+import com.ecommerce.shoppingcart.dto.CartSummaryResponseDto;
 import com.ecommerce.shoppingcart.dto.ShoppingCartResponseDto;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -13,9 +29,15 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class ShoppingCartService {
 
+  private static final int MAX_UPDATE_ATTEMPTS = 3;
+
   @Autowired private ShoppingCartRepository cartRepository;
 
-  @Autowired private ProductRepository productRepository;
+  @Autowired private ProductLoader productLoader;
+
+  @Autowired private InventoryService inventoryService;
+
+  @Autowired private ProductRevisionIndex productRevisionIndex;
 
   public ShoppingCartResponseDto createCart(String userId) {
     ShoppingCartEntity cart = new ShoppingCartEntity();
@@ -29,61 +51,161 @@ public class ShoppingCartService {
     return enrichCartResponse(cart);
   }
 
+  // Priced from the stored snapshots alone, no product is looked up. A price change shows once
+  // the full cart has been read and has re-priced its lines.
+  public CartSummaryResponseDto getCartSummary(String cartId) {
+    return findCartById(cartId).toSummary();
+  }
+
+  // Carts are created here on the first add rather than up front for every registered user
+  public ShoppingCartResponseDto addItemToUserCart(String userId, CartItemRequestDto itemRequest) {
+    // Checked before a cart is created, addItemToCart gets the same product from the loader
+    findProduct(itemRequest.getProductId());
+    return addItemToCart(cartRepository.findOrCreateCartIdForUser(userId), itemRequest);
+  }
+
   public ShoppingCartResponseDto addItemToCart(String cartId, CartItemRequestDto itemRequest) {
-    ShoppingCartEntity cart = findCartById(cartId);
-    verifyAndGetProduct(itemRequest.getProductId(), itemRequest.getQuantity());
-
-    boolean itemExists = false;
-    for (CartItem item : cart.getItems()) {
-      if (item.getProductId().equals(itemRequest.getProductId())) {
-        verifyAndGetProduct(
-            itemRequest.getProductId(), item.getQuantity() + itemRequest.getQuantity());
-        item.setQuantity(item.getQuantity() + itemRequest.getQuantity());
-        itemExists = true;
-        break;
+    String productId = itemRequest.getProductId();
+    int quantity = itemRequest.getQuantity();
+    ProductEntity product = findProduct(productId);
+
+    // Stock is taken first, a cart update that never lands hands it back
+    inventoryService.reserve(cartId, productId, quantity);
+    try {
+      for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+        // Increment the existing line, otherwise append a new line
+        Optional<ShoppingCartEntity> savedCart =
+            cartRepository
+                .incrementItemQuantity(cartId, productId, quantity)
+                .or(() -> cartRepository.pushItem(cartId, CartItem.snapshot(product, quantity)));
+        if (savedCart.isPresent()) {
+          return enrichCartResponse(savedCart.get());
+        }
+
+        // Neither update matched, either the cart is gone or the line was added or removed
+        // concurrently between the two updates
+        findCartById(cartId);
       }
-    }
 
-    if (!itemExists) {
-      cart.getItems().add(new CartItem(itemRequest));
+      throw new ResponseStatusException(
+          HttpStatus.CONFLICT, "Shopping cart was modified concurrently, please retry");
+    } catch (RuntimeException ex) {
+      inventoryService.release(cartId, productId, quantity);
+      throw ex;
     }
-
-    ShoppingCartEntity savedCart = cartRepository.save(cart);
-    return enrichCartResponse(savedCart);
   }
 
   public ShoppingCartResponseDto removeItemFromCart(String cartId, String productId) {
-    ShoppingCartEntity cart = findCartById(cartId);
-    cart.getItems().removeIf(item -> item.getProductId().equals(productId));
-    ShoppingCartEntity savedCart = cartRepository.save(cart);
-    return enrichCartResponse(savedCart);
+    Optional<ShoppingCartEntity> savedCart = cartRepository.pullItem(cartId, productId);
+    if (savedCart.isEmpty()) {
+      // Tells a missing cart apart from a missing line
+      findCartById(cartId);
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Item not found in cart");
+    }
+    inventoryService.releaseLine(cartId, productId);
+    return enrichCartResponse(savedCart.get());
   }
 
   public ShoppingCartResponseDto updateItemQuantity(String cartId, CartItemRequestDto itemRequest) {
+    String productId = itemRequest.getProductId();
+    findProduct(productId);
+
     ShoppingCartEntity cart = findCartById(cartId);
-    verifyAndGetProduct(itemRequest.getProductId(), itemRequest.getQuantity());
-
-    boolean itemFound = false;
-    for (CartItem item : cart.getItems()) {
-      if (item.getProductId().equals(itemRequest.getProductId())) {
-        item.setQuantity(itemRequest.getQuantity());
-        itemFound = true;
-        break;
-      }
+    if (!cart.getLines().containsKey(productId)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Item not found in cart");
     }
 
-    if (!itemFound) {
+    inventoryService.adjust(cartId, productId, itemRequest.getQuantity());
+    Optional<ShoppingCartEntity> savedCart =
+        cartRepository.setItemQuantity(cartId, productId, itemRequest.getQuantity());
+
+    if (savedCart.isEmpty()) {
+      // The line was removed concurrently, which already released its hold
+      inventoryService.releaseLine(cartId, productId);
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Item not found in cart");
     }
 
-    ShoppingCartEntity savedCart = cartRepository.save(cart);
-    return enrichCartResponse(savedCart);
+    return enrichCartResponse(savedCart.get());
+  }
+
+  public ShoppingCartResponseDto applyBatch(String cartId, CartBatchRequestDto batchRequest) {
+    List<CartItemOperationDto> operations = batchRequest.getOperations();
+    Map<String, ProductEntity> products = findProducts(operations);
+
+    for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+      ShoppingCartEntity cart = findCartById(cartId);
+
+      // Replay the operations on the touched lines, null stands for no line
+      Map<String, Integer> expected = new HashMap<>();
+      Map<String, Integer> updated = new LinkedHashMap<>();
+      for (CartItemOperationDto operation : operations) {
+        String productId = operation.getProductId();
+        if (!expected.containsKey(productId)) {
+          CartItem line = cart.getLines().get(productId);
+          expected.put(productId, line == null ? null : line.getQuantity());
+          updated.put(productId, expected.get(productId));
+        }
+
+        Integer current = updated.get(productId);
+        switch (operation.getType()) {
+          case ADD ->
+              updated.put(productId, (current == null ? 0 : current) + requireQuantity(operation));
+          case UPDATE -> {
+            if (current == null) {
+              throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Item not found in cart");
+            }
+            updated.put(productId, requireQuantity(operation));
+          }
+          case REMOVE -> updated.put(productId, null);
+        }
+      }
+
+      // Lines that grow reserve their stock together first and hand it back if the write
+      // doesn't land
+      Map<String, Integer> reserved = new HashMap<>();
+      for (String productId : updated.keySet()) {
+        int delta = quantityChange(expected, updated, productId);
+        if (delta > 0) {
+          reserved.put(productId, delta);
+        }
+      }
+      inventoryService.reserveAll(cartId, reserved);
+
+      Optional<ShoppingCartEntity> savedCart;
+      try {
+        savedCart =
+            cartRepository.applyLineQuantities(cartId, expected, toLines(updated, products));
+      } catch (RuntimeException ex) {
+        reserved.forEach((productId, delta) -> inventoryService.release(cartId, productId, delta));
+        throw ex;
+      }
+
+      if (savedCart.isEmpty()) {
+        // A touched line changed since the cart was read, start over from the current cart
+        reserved.forEach((productId, delta) -> inventoryService.release(cartId, productId, delta));
+        continue;
+      }
+
+      // Lines that shrank or went away give their stock back once the cart no longer holds it
+      for (String productId : updated.keySet()) {
+        if (updated.get(productId) == null) {
+          inventoryService.releaseLine(cartId, productId);
+        } else if (quantityChange(expected, updated, productId) < 0) {
+          inventoryService.release(
+              cartId, productId, -quantityChange(expected, updated, productId));
+        }
+      }
+      return enrichCartResponse(savedCart.get());
+    }
+
+    throw new ResponseStatusException(
+        HttpStatus.CONFLICT, "Shopping cart was modified concurrently, please retry");
   }
 
   public ShoppingCartResponseDto clearCart(String cartId) {
-    ShoppingCartEntity cart = findCartById(cartId);
-    cart.getItems().clear();
-    ShoppingCartEntity savedCart = cartRepository.save(cart);
+    ShoppingCartEntity savedCart =
+        cartRepository.clearItems(cartId).orElseThrow(this::cartNotFound);
+    inventoryService.releaseCart(cartId);
     return enrichCartResponse(savedCart);
   }
 
@@ -92,49 +214,138 @@ public class ShoppingCartService {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Shopping cart not found");
     }
     cartRepository.deleteById(cartId);
+    inventoryService.releaseCart(cartId);
   }
 
   // Helper methods
   private ShoppingCartEntity findCartById(String cartId) {
-    return cartRepository
-        .findById(cartId)
-        .orElseThrow(
-            () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Shopping cart not found"));
+    return cartRepository.findById(cartId).orElseThrow(this::cartNotFound);
   }
 
-  private ProductEntity verifyAndGetProduct(String productId, int quantity) {
-    ProductEntity product =
-        productRepository
-            .findById(productId)
-            .orElseThrow(
-                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found"));
+  private ResponseStatusException cartNotFound() {
+    return new ResponseStatusException(HttpStatus.NOT_FOUND, "Shopping cart not found");
+  }
 
-    if (product.getStockQuantity() < quantity) {
-      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Insufficient stock quantity");
+  // All products added or updated by a batch are checked with one lookup
+  private Map<String, ProductEntity> findProducts(List<CartItemOperationDto> operations) {
+    Set<String> productIds =
+        operations.stream()
+            .filter(operation -> operation.getType() != CartOperationType.REMOVE)
+            .map(CartItemOperationDto::getProductId)
+            .collect(Collectors.toSet());
+    Map<String, ProductEntity> products = productLoader.loadAll(productIds);
+    if (!products.keySet().containsAll(productIds)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found");
     }
+    return products;
+  }
+
+  // Lines that remain carry a fresh price snapshot in case the batch creates them
+  private Map<String, CartItem> toLines(
+      Map<String, Integer> quantities, Map<String, ProductEntity> products) {
+    Map<String, CartItem> lines = new LinkedHashMap<>();
+    quantities.forEach(
+        (productId, quantity) ->
+            lines.put(
+                productId,
+                quantity == null ? null : CartItem.snapshot(products.get(productId), quantity)));
+    return lines;
+  }
 
-    return product;
+  private int requireQuantity(CartItemOperationDto operation) {
+    if (operation.getQuantity() == null) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity is required");
+    }
+    return operation.getQuantity();
+  }
+
+  private int quantityChange(
+      Map<String, Integer> expected, Map<String, Integer> updated, String productId) {
+    int before = expected.get(productId) == null ? 0 : expected.get(productId);
+    int after = updated.get(productId) == null ? 0 : updated.get(productId);
+    return after - before;
+  }
+
+  // Stock is checked by the reservation itself, the cached copy may lag behind it
+  private ProductEntity findProduct(String productId) {
+    return productLoader
+        .load(productId)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found"));
   }
 
   private ShoppingCartResponseDto enrichCartResponse(ShoppingCartEntity cart) {
     ShoppingCartResponseDto responseDto = cart.toResponse();
-    double totalPrice = 0.0;
+    Map<String, ProductEntity> repriced = repriceStaleLines(cart);
+    long totalPriceMinor = 0;
 
     for (CartItemResponseDto itemDto : responseDto.getItems()) {
-      ProductEntity product =
-          productRepository
-              .findById(itemDto.getProductId())
-              .orElseThrow(
-                  () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product not found"));
+      CartItem line = cart.getLines().get(itemDto.getProductId());
 
-      itemDto.setProductName(product.getName());
-      itemDto.setProductPrice(product.getPrice());
-      itemDto.setTotalPrice(product.getPrice() * itemDto.getQuantity());
+      // Product was deleted after it was added, flag the line instead of failing the whole cart
+      if (repriced.containsKey(line.getProductId()) && repriced.get(line.getProductId()) == null) {
+        itemDto.setAvailable(false);
+        itemDto.setTotalPrice(0.0);
+        continue;
+      }
+
+      long lineTotalMinor = line.getUnitPriceMinor() * line.getQuantity();
+      itemDto.setAvailable(true);
+      itemDto.setProductName(line.getProductName());
+      itemDto.setProductPrice(Money.toMajor(line.getUnitPriceMinor()));
+      itemDto.setTotalPrice(Money.toMajor(lineTotalMinor));
 
-      totalPrice += itemDto.getTotalPrice();
+      totalPriceMinor += lineTotalMinor;
     }
 
-    responseDto.setTotalPrice(totalPrice);
+    responseDto.setTotalPrice(Money.toMajor(totalPriceMinor));
     return responseDto;
   }
+
+  // Lines whose product revision moved, or that never had a snapshot, are re-priced from the
+  // product loader and saved back. Lines of deleted products lose their price so the summary
+  // stops counting them. Returns the re-priced products, null for deleted ones.
+  private Map<String, ProductEntity> repriceStaleLines(ShoppingCartEntity cart) {
+    Map<String, ProductEntity> repriced = currentProductsOfStaleLines(cart);
+    List<CartItem> refreshed = new ArrayList<>();
+    repriced.forEach(
+        (productId, product) -> {
+          CartItem line = cart.getLines().get(productId);
+          if (product != null) {
+            line.takeSnapshot(product);
+            refreshed.add(line);
+          } else if (line.getUnitPriceMinor() != null) {
+            line.dropSnapshot();
+            refreshed.add(line);
+          }
+        });
+    if (!refreshed.isEmpty()) {
+      cartRepository.refreshLineSnapshots(cart.getId(), refreshed);
+    }
+    return repriced;
+  }
+
+  // The current product of every line whose snapshot is stale, null for deleted products
+  private Map<String, ProductEntity> currentProductsOfStaleLines(ShoppingCartEntity cart) {
+    Map<String, Long> revisions = productRevisionIndex.getAll(cart.getLines().keySet());
+    List<CartItem> staleLines =
+        cart.getLines().values().stream()
+            .filter(
+                line ->
+                    line.getProductRevision() == null
+                        || !line.getProductRevision().equals(revisions.get(line.getProductId())))
+            .toList();
+    if (staleLines.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    // Products not seen yet in this request are loaded with a single $in query
+    Map<String, ProductEntity> products =
+        productLoader.loadAll(staleLines.stream().map(CartItem::getProductId).toList());
+
+    Map<String, ProductEntity> current = new HashMap<>();
+    for (CartItem line : staleLines) {
+      current.put(line.getProductId(), products.get(line.getProductId()));
+    }
+    return current;
+  }
 }
@@ -0,0 +1,15 @@
+package com.ecommerce.shoppingcart.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+import lombok.Data;
+
+@Data
+public class CartBatchRequestDto {
+  @NotEmpty(message = "Operations list cannot be empty")
+  @Valid
+  @Schema(description = "Operations applied in order, all or none of them take effect")
+  private List<CartItemOperationDto> operations;
+}
@@ -0,0 +1,22 @@
+package com.ecommerce.shoppingcart.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class CartItemOperationDto {
+  @NotNull(message = "Operation type is required")
+  @Schema(description = "Operation to apply to the line", example = "ADD", required = true)
+  private CartOperationType type;
+
+  @NotBlank(message = "Product ID is required")
+  @Schema(description = "Product ID of the cart line", example = "prod123", required = true)
+  private String productId;
+
+  @Min(value = 1, message = "Quantity must be at least 1")
+  @Schema(description = "Quantity to add or set, ignored for REMOVE", example = "1", minimum = "1")
+  private Integer quantity;
+}
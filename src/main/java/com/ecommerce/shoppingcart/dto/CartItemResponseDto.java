@@ -19,4 +19,7 @@ public class CartItemResponseDto {
 
   @Schema(description = "Total price for this item", example = "59.98")
   private Double totalPrice;
+
+  @Schema(description = "Whether the product still exists in the catalog", example = "true")
+  private boolean available;
 }
@@ -0,0 +1,7 @@
+package com.ecommerce.shoppingcart.dto;
+
+public enum CartOperationType {
+  ADD, // Adds quantity to the line, creating it if needed
+  UPDATE, // Sets the quantity of an existing line
+  REMOVE // Removes the line
+}
@@ -0,0 +1,16 @@
+package com.ecommerce.shoppingcart.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+public class CartSummaryResponseDto {
+  @Schema(description = "Shopping cart ID", example = "cart123")
+  private String id;
+
+  @Schema(description = "Total number of items in cart", example = "5")
+  private int totalItems;
+
+  @Schema(description = "Total price from the prices stored on the cart lines", example = "149.95")
+  private double totalPrice;
+}
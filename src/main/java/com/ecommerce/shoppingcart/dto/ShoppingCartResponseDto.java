@@ -1,6 +1,7 @@
 package com.ecommerce.shoppingcart.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.Date;
 import java.util.List;
 import lombok.Data;
 
@@ -16,7 +17,7 @@ public class ShoppingCartResponseDto {
   private List<CartItemResponseDto> items;
 
   @Schema(description = "Cart creation timestamp", example = "2024-03-20T10:30:00Z")
-  private String createdAt;
+  private Date createdAt;
 
   @Schema(description = "Total number of items in cart", example = "5")
   private int totalItems;
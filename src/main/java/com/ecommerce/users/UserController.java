@@ -8,6 +8,8 @@ import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -26,19 +28,24 @@ public class UserController {
 
   @GetMapping
   public ResponseEntity<PageResponse<UserResponseDto>> getAllUsers(
-      @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int size) {
-    Page<UserResponseDto> userPage = userService.getAllUsers(PageRequest.of(page, size));
+      @RequestParam(defaultValue = "0") int page,
+      @RequestParam(defaultValue = "10") int size,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "true") boolean withTotal) {
+    // Keyset mode, "after" is empty for the first page and the returned nextCursor afterwards
+    if (after != null) {
+      Window<UserResponseDto> users = userService.getUsersAfter(size, after);
+      return ResponseEntity.ok(PageResponse.from(users, size, after.isEmpty()));
+    }
 
-    PageResponse<UserResponseDto> response = new PageResponse<>();
-    response.setContent(userPage.getContent());
-    response.setPageNumber(userPage.getNumber());
-    response.setPageSize(userPage.getSize());
-    response.setTotalElements(userPage.getTotalElements());
-    response.setTotalPages(userPage.getTotalPages());
-    response.setLast(userPage.isLast());
-    response.setFirst(userPage.isFirst());
+    // Infinite scroll clients skip the count query that fills the totals
+    if (!withTotal) {
+      Slice<UserResponseDto> users = userService.getUserSlice(PageRequest.of(page, size));
+      return ResponseEntity.ok(PageResponse.from(users));
+    }
 
-    return ResponseEntity.ok(response);
+    Page<UserResponseDto> userPage = userService.getAllUsers(PageRequest.of(page, size));
+    return ResponseEntity.ok(PageResponse.from(userPage));
   }
 
   @DeleteMapping("/{id}")
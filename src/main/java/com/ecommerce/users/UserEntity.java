@@ -9,6 +9,7 @@ import java.util.stream.Collectors;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
@@ -22,7 +23,7 @@ public class UserEntity {
   private String email;
   private String password;
   private Set<Role> roles = new HashSet<>();
-  private String createdAt = new Date().toString();
+  @Indexed private Date createdAt = new Date();
 
   public UserEntity(UserRequestDto user) {
     this.firstName = user.getFirstName();
@@ -2,11 +2,13 @@ package com.ecommerce.users;
 
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface UserRepository extends MongoRepository<UserEntity, String> {
+public interface UserRepository extends MongoRepository<UserEntity, String>, UserRepositoryCustom {
   boolean existsByEmail(String email);
 
   Optional<UserEntity> findByEmail(String email);
@@ -14,4 +16,6 @@ public interface UserRepository extends MongoRepository<UserEntity, String> {
   boolean existsByRolesContaining(Role role);
 
   List<UserEntity> findByRolesContaining(Role role);
+
+  Slice<UserEntity> findAllBy(Pageable pageable);
 }
@@ -0,0 +1,8 @@
+package com.ecommerce.users;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Window;
+
+public interface UserRepositoryCustom {
+  Window<UserEntity> scrollAll(int limit, KeysetScrollPosition position);
+}
@@ -0,0 +1,21 @@
+package com.ecommerce.users;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Override
+  public Window<UserEntity> scrollAll(int limit, KeysetScrollPosition position) {
+    // Seeks past the last id instead of skipping, and never counts
+    Query query = Query.query(new Criteria()).with(Sort.by("id")).limit(limit).with(position);
+    return mongoTemplate.scroll(query, UserEntity.class);
+  }
+}
@@ -1,5 +1,7 @@
 package com.ecommerce.users;
 
+import com.ecommerce.common.ScrollCursor;
+import com.ecommerce.security.TokenRevocationChecker;
 import com.ecommerce.shoppingcart.ShoppingCartRepository;
 import com.ecommerce.users.dto.UserPartialUpdateDto;
 import com.ecommerce.users.dto.UserRequestDto;
@@ -7,6 +9,8 @@ import com.ecommerce.users.dto.UserResponseDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Window;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -21,6 +25,8 @@ public class UserService {
 
   @Autowired private PasswordEncoder passwordEncoder;
 
+  @Autowired private TokenRevocationChecker tokenRevocationChecker;
+
   public UserEntity getUserById(String id) {
     return userRepository
         .findById(id)
@@ -31,6 +37,16 @@ public class UserService {
     return userRepository.findAll(pageable).map(UserEntity::toResponseDto);
   }
 
+  public Slice<UserResponseDto> getUserSlice(Pageable pageable) {
+    return userRepository.findAllBy(pageable).map(UserEntity::toResponseDto);
+  }
+
+  public Window<UserResponseDto> getUsersAfter(int size, String cursor) {
+    return userRepository
+        .scrollAll(size, ScrollCursor.decode(cursor))
+        .map(UserEntity::toResponseDto);
+  }
+
   public void deleteUser(String id) {
     UserEntity user = getUserById(id);
 
@@ -44,6 +60,7 @@ public class UserService {
 
     // Then delete the user
     userRepository.delete(user);
+    tokenRevocationChecker.evict(id);
   }
 
   public UserResponseDto updateUser(String id, UserRequestDto userDetails) {
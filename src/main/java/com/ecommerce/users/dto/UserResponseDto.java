@@ -1,5 +1,6 @@
 package com.ecommerce.users.dto;
 
+import java.util.Date;
 import java.util.Set;
 import lombok.Data;
 
@@ -9,6 +10,6 @@ public class UserResponseDto {
   private String firstName;
   private String lastName;
   private String email;
-  private String createdAt;
+  private Date createdAt;
   private Set<String> roles;
 }
@@ -4,20 +4,38 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import com.ecommerce.auth.dto.JwtAuthResponse;
 import com.ecommerce.auth.dto.LoginRequest;
+import com.ecommerce.common.CacheStatsResponse;
 import com.ecommerce.common.ErrorResponse;
 import com.ecommerce.common.PageResponse;
+import com.ecommerce.common.TimestampMigration;
+import com.ecommerce.inventory.InventoryService;
+import com.ecommerce.product.dto.PriceBucketDto;
+import com.ecommerce.product.dto.ProductChangeDto;
+import com.ecommerce.product.dto.ProductChangesResponseDto;
+import com.ecommerce.product.dto.ProductFacetsResponseDto;
 import com.ecommerce.product.dto.ProductRequestDto;
+import com.ecommerce.product.dto.ProductResponseDto;
 import com.ecommerce.users.Role;
 import com.ecommerce.users.UserRepository;
 import com.ecommerce.users.dto.UserRequestDto;
 import com.ecommerce.users.dto.UserResponseDto;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.*;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
@@ -37,6 +55,8 @@ class ProductIntegrationTest {
   @DynamicPropertySource
   static void setProperties(DynamicPropertyRegistry registry) {
     registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+    // Changes are returned right away instead of after the settle delay
+    registry.add("app.product-changes.settle-ms", () -> "0");
   }
 
   @Autowired private TestRestTemplate restTemplate;
@@ -45,6 +65,16 @@ class ProductIntegrationTest {
 
   @Autowired private UserRepository userRepository;
 
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private ProductPriceMigration productPriceMigration;
+
+  @Autowired private TimestampMigration timestampMigration;
+
+  @Autowired private ProductSearchIndex productSearchIndex;
+
+  @Autowired private InventoryService inventoryService;
+
   private ProductRequestDto productRequestDto;
   private HttpHeaders headers;
 
@@ -52,6 +82,7 @@ class ProductIntegrationTest {
   void setUp() {
     productRepository.deleteAll();
     userRepository.deleteAll();
+    mongoTemplate.remove(new Query(), ProductTombstoneEntity.class);
 
     // Create admin user
     UserRequestDto userRequestDto = new UserRequestDto();
@@ -155,6 +186,646 @@ class ProductIntegrationTest {
     assertNotNull(response.getBody());
   }
 
+  @Test
+  void getAllProducts_CombinedFilters_AppliesAll() {
+    // Given
+    createSampleProducts();
+
+    // When
+    ResponseEntity<PageResponse<ProductEntity>> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?category=Electronics&maxPrice=120&searchTerm=test",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<PageResponse<ProductEntity>>() {});
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertNotNull(response.getBody());
+    assertEquals(1, response.getBody().getTotalElements());
+    assertEquals("Test Product 1", response.getBody().getContent().get(0).getName());
+  }
+
+  @Test
+  void searchProducts_PrefixMatch_RankedByRelevance() {
+    // Given
+    createSampleProducts();
+    ProductRequestDto accessory = new ProductRequestDto();
+    accessory.setName("Carrying Case");
+    accessory.setDescription("Fits any different laptop");
+    accessory.setPrice(19.99);
+    accessory.setCategory("Other");
+    restTemplate.postForEntity(
+        PRODUCTS_URL, new HttpEntity<>(accessory, headers), ProductEntity.class);
+
+    // When
+    ResponseEntity<List<ProductResponseDto>> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/search?q=diff",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<List<ProductResponseDto>>() {});
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2, response.getBody().size());
+    assertEquals("Different Product", response.getBody().get(0).getName());
+    assertEquals("Carrying Case", response.getBody().get(1).getName());
+  }
+
+  @Test
+  void searchProducts_WritesFromOtherInstance_SyncedFromChangeFeed() {
+    // Given a product written straight to Mongo, as another instance would, without local events
+    Document remote =
+        new Document("name", "Remote Gadget")
+            .append("description", "Written elsewhere")
+            .append("category", "Electronics")
+            .append("priceMinor", 1500L)
+            .append("stockQuantity", 3)
+            .append("active", true)
+            .append("version", 0L)
+            .append("createdAt", new Date())
+            .append("updatedAt", new Date());
+    mongoTemplate.getCollection("products").insertOne(remote);
+    String remoteId = remote.getObjectId("_id").toHexString();
+
+    // When the index syncs from the change feed
+    productSearchIndex.syncFromChangeFeed();
+
+    // Then the product is searchable on this node
+    ResponseEntity<List<ProductResponseDto>> found =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/search?q=remote",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<List<ProductResponseDto>>() {});
+    assertEquals(1, found.getBody().size());
+    assertEquals(remoteId, found.getBody().get(0).getId());
+
+    // And a delete made elsewhere drops it once its tombstone is synced
+    mongoTemplate.getCollection("products").deleteOne(new Document("_id", remote.get("_id")));
+    mongoTemplate.save(new ProductTombstoneEntity(remoteId, new Date()));
+    productSearchIndex.syncFromChangeFeed();
+
+    assertTrue(productSearchIndex.search("remote", 10).isEmpty());
+  }
+
+  @Test
+  void importProducts_Ndjson_UpsertsValidRowsAndReportsErrors() {
+    // Given an existing product that the import updates
+    ProductEntity existing =
+        restTemplate
+            .postForEntity(
+                PRODUCTS_URL, new HttpEntity<>(productRequestDto, headers), ProductEntity.class)
+            .getBody();
+    String rows =
+        "{\"id\":\""
+            + existing.getId()
+            + "\",\"name\":\"Imported Update\",\"price\":5.5,\"stockQuantity\":3,"
+            + "\"category\":\"Books\"}\n"
+            + "{\"name\":\"Imported Lamp\",\"price\":12.25,\"stockQuantity\":7,"
+            + "\"category\":\"Home\"}\n"
+            + "{\"name\":\"Broken\",\"price\":-1,\"stockQuantity\":1,\"category\":\"Home\"}\n";
+    HttpHeaders importHeaders = new HttpHeaders();
+    importHeaders.putAll(headers);
+    importHeaders.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+
+    // When
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/import",
+            HttpMethod.POST,
+            new HttpEntity<>(rows, importHeaders),
+            String.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    List<String> events = List.of(response.getBody().split("\n"));
+    assertTrue(events.get(0).contains("\"type\":\"error\""));
+    assertTrue(events.get(0).contains("\"line\":3"));
+    assertTrue(events.get(0).contains("Price must be greater than 0"));
+    assertTrue(events.get(events.size() - 1).contains("\"type\":\"summary\""));
+    assertTrue(events.get(events.size() - 1).contains("\"upserted\":2"));
+    assertTrue(events.get(events.size() - 1).contains("\"failed\":1"));
+
+    assertEquals(2, productRepository.count());
+    ProductEntity updated = productRepository.findById(existing.getId()).get();
+    assertEquals("Imported Update", updated.getName());
+    assertEquals(5.5, updated.getPrice());
+    assertEquals(existing.getCreatedAt(), updated.getCreatedAt());
+    assertEquals(1L, updated.getVersion());
+
+    // The search index picked up the imported products
+    ResponseEntity<List<ProductResponseDto>> search =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/search?q=lamp",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<List<ProductResponseDto>>() {});
+    assertEquals(1, search.getBody().size());
+    assertEquals("Imported Lamp", search.getBody().get(0).getName());
+  }
+
+  @Test
+  void importProducts_Csv_UpsertsRows() {
+    // Given
+    String rows =
+        "name,description,price,stockQuantity,category,active\n"
+            + "Desk,\"Oak, \"\"solid\"\" top\",120.00,4,Home,true\n"
+            + "Chair,,45.50,10,Home,false\n";
+    HttpHeaders importHeaders = new HttpHeaders();
+    importHeaders.putAll(headers);
+    importHeaders.setContentType(MediaType.parseMediaType("text/csv"));
+
+    // When
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/import?ordered=true",
+            HttpMethod.POST,
+            new HttpEntity<>(rows, importHeaders),
+            String.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertTrue(response.getBody().contains("\"upserted\":2"));
+    List<ProductEntity> products = productRepository.findAll();
+    assertEquals(2, products.size());
+    ProductEntity desk =
+        products.stream().filter(p -> p.getName().equals("Desk")).findFirst().get();
+    assertEquals("Oak, \"solid\" top", desk.getDescription());
+    assertEquals(4, desk.getStockQuantity());
+  }
+
+  @Test
+  void migratePrices_LegacyDoubleAndStringPrices_MovedToMinorUnits() {
+    // Given products written before prices were stored in minor units
+    mongoTemplate.insert(
+        new Document("name", "Legacy Double")
+            .append("category", "Books")
+            .append("active", true)
+            .append("price", 19.99),
+        "products");
+    mongoTemplate.insert(
+        new Document("name", "Legacy String")
+            .append("category", "Books")
+            .append("active", true)
+            .append("price", "7.25"),
+        "products");
+
+    // When
+    productPriceMigration.migrate();
+
+    // Then
+    Document migrated =
+        mongoTemplate.findOne(
+            Query.query(Criteria.where("name").is("Legacy Double")), Document.class, "products");
+    assertEquals(1999L, migrated.get("priceMinor"));
+    assertFalse(migrated.containsKey("price"));
+
+    ResponseEntity<PageResponse<ProductResponseDto>> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?minPrice=7.25&maxPrice=19.99&sortBy=price",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<PageResponse<ProductResponseDto>>() {});
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2, response.getBody().getContent().size());
+    assertEquals("Legacy String", response.getBody().getContent().get(0).getName());
+    assertEquals(7.25, response.getBody().getContent().get(0).getPrice());
+    assertEquals(19.99, response.getBody().getContent().get(1).getPrice());
+  }
+
+  @Test
+  void migrateTimestamps_StringDates_ConvertedToDates() {
+    // Given a product written when timestamps were Date.toString() strings
+    mongoTemplate.insert(
+        new Document("name", "Legacy Product")
+            .append("category", "Books")
+            .append("priceMinor", 500L)
+            .append("createdAt", "Sat Oct 18 10:15:30 UTC 2025")
+            .append("updatedAt", "not a date"),
+        "products");
+
+    // When
+    timestampMigration.migrate();
+
+    // Then
+    Document migrated =
+        mongoTemplate.findOne(
+            Query.query(Criteria.where("name").is("Legacy Product")), Document.class, "products");
+    assertEquals(Date.from(Instant.parse("2025-10-18T10:15:30Z")), migrated.getDate("createdAt"));
+    // Unreadable values fall back to the creation time of the ObjectId
+    assertEquals(
+        migrated.getObjectId("_id").getDate().getTime() / 1000,
+        migrated.getDate("updatedAt").getTime() / 1000);
+  }
+
+  @Test
+  void getProductChanges_SinceCursor_ReturnsUpdatesAndDeletes() {
+    // Given
+    createSampleProducts();
+    ResponseEntity<ProductChangesResponseDto> initial =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/changes",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductChangesResponseDto.class);
+    assertEquals(HttpStatus.OK, initial.getStatusCode());
+    assertEquals(productRepository.count(), initial.getBody().getChanges().size());
+
+    List<ProductEntity> products = productRepository.findAll();
+    ProductEntity updated = products.get(0);
+    ProductEntity deleted = products.get(1);
+    productRequestDto.setName("Renamed Product");
+    restTemplate.exchange(
+        PRODUCTS_URL + "/" + updated.getId(),
+        HttpMethod.PUT,
+        new HttpEntity<>(productRequestDto, headers),
+        ProductResponseDto.class);
+    restTemplate.exchange(
+        PRODUCTS_URL + "/" + deleted.getId(),
+        HttpMethod.DELETE,
+        new HttpEntity<>(headers),
+        Void.class);
+
+    // When
+    ResponseEntity<ProductChangesResponseDto> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/changes?since=" + initial.getBody().getNextCursor(),
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductChangesResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    List<ProductChangeDto> changes = response.getBody().getChanges();
+    assertEquals(2, changes.size());
+    assertEquals("upsert", changes.get(0).getType());
+    assertEquals(updated.getId(), changes.get(0).getProductId());
+    assertEquals("Renamed Product", changes.get(0).getProduct().getName());
+    assertEquals("delete", changes.get(1).getType());
+    assertEquals(deleted.getId(), changes.get(1).getProductId());
+    assertNull(changes.get(1).getProduct());
+
+    // Nothing new since the last cursor
+    ResponseEntity<ProductChangesResponseDto> caughtUp =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/changes?since=" + response.getBody().getNextCursor(),
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductChangesResponseDto.class);
+    assertTrue(caughtUp.getBody().getChanges().isEmpty());
+    assertEquals(response.getBody().getNextCursor(), caughtUp.getBody().getNextCursor());
+  }
+
+  @Test
+  void getProductById_IfNoneMatch_ReturnsNotModifiedAndIfMatchGuardsUpdates() {
+    // Given
+    ProductEntity savedProduct =
+        restTemplate
+            .postForEntity(
+                PRODUCTS_URL, new HttpEntity<>(productRequestDto, headers), ProductEntity.class)
+            .getBody();
+    ResponseEntity<ProductEntity> first =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductEntity.class);
+    String eTag = first.getHeaders().getETag();
+    assertNotNull(eTag);
+    assertFalse(eTag.startsWith("W/"));
+
+    // When revalidated
+    HttpHeaders conditionalHeaders = new HttpHeaders();
+    conditionalHeaders.putAll(headers);
+    conditionalHeaders.setIfNoneMatch(eTag);
+    ResponseEntity<ProductEntity> revalidated =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            ProductEntity.class);
+
+    // Then
+    assertEquals(HttpStatus.NOT_MODIFIED, revalidated.getStatusCode());
+
+    // An update with the current ETag goes through, repeating it with the now stale one fails
+    HttpHeaders ifMatchHeaders = new HttpHeaders();
+    ifMatchHeaders.putAll(headers);
+    ifMatchHeaders.setIfMatch(eTag);
+    productRequestDto.setName("Updated Product");
+    ResponseEntity<ProductResponseDto> updated =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.PUT,
+            new HttpEntity<>(productRequestDto, ifMatchHeaders),
+            ProductResponseDto.class);
+    assertEquals(HttpStatus.OK, updated.getStatusCode());
+
+    ResponseEntity<ErrorResponse> stale =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.PUT,
+            new HttpEntity<>(productRequestDto, ifMatchHeaders),
+            ErrorResponse.class);
+    assertEquals(HttpStatus.PRECONDITION_FAILED, stale.getStatusCode());
+
+    ResponseEntity<ProductEntity> changed =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            ProductEntity.class);
+    assertEquals(HttpStatus.OK, changed.getStatusCode());
+    assertNotEquals(eTag, changed.getHeaders().getETag());
+  }
+
+  @Test
+  void getProductById_IfNoneMatch_ChangesAfterRestock() {
+    // Given
+    ProductEntity savedProduct =
+        restTemplate
+            .postForEntity(
+                PRODUCTS_URL, new HttpEntity<>(productRequestDto, headers), ProductEntity.class)
+            .getBody();
+    inventoryService.reserve("restock-cart", savedProduct.getId(), 3);
+    ResponseEntity<ProductEntity> first =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductEntity.class);
+    assertEquals(7, first.getBody().getStockQuantity());
+
+    // When
+    inventoryService.release("restock-cart", savedProduct.getId(), 3);
+
+    // Then
+    HttpHeaders conditionalHeaders = new HttpHeaders();
+    conditionalHeaders.putAll(headers);
+    conditionalHeaders.setIfNoneMatch(first.getHeaders().getETag());
+    ResponseEntity<ProductEntity> restocked =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            ProductEntity.class);
+    assertEquals(HttpStatus.OK, restocked.getStatusCode());
+    assertEquals(10, restocked.getBody().getStockQuantity());
+    assertNotEquals(first.getHeaders().getETag(), restocked.getHeaders().getETag());
+  }
+
+  @Test
+  void getAllProducts_IfNoneMatch_ReturnsNotModifiedUntilCatalogChanges() {
+    // Given
+    createSampleProducts();
+    ResponseEntity<String> first =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?page=0&size=10",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            String.class);
+    String eTag = first.getHeaders().getETag();
+    assertNotNull(eTag);
+    assertTrue(eTag.startsWith("W/"));
+
+    // When
+    HttpHeaders conditionalHeaders = new HttpHeaders();
+    conditionalHeaders.putAll(headers);
+    conditionalHeaders.setIfNoneMatch(eTag);
+    ResponseEntity<String> revalidated =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?page=0&size=10",
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            String.class);
+
+    // Then
+    assertEquals(HttpStatus.NOT_MODIFIED, revalidated.getStatusCode());
+
+    // A new product changes the catalog version
+    restTemplate.postForEntity(
+        PRODUCTS_URL, new HttpEntity<>(productRequestDto, headers), ProductEntity.class);
+    ResponseEntity<String> changed =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?page=0&size=10",
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            String.class);
+    assertEquals(HttpStatus.OK, changed.getStatusCode());
+  }
+
+  @Test
+  void getAllProducts_IfNoneMatch_ChangesAfterBulkDelete() {
+    // Given
+    createSampleProducts();
+    ResponseEntity<String> first =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?page=0&size=10",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            String.class);
+    HttpHeaders conditionalHeaders = new HttpHeaders();
+    conditionalHeaders.putAll(headers);
+    conditionalHeaders.setIfNoneMatch(first.getHeaders().getETag());
+
+    // When
+    mongoTemplate.remove(Query.query(Criteria.where("category").is("Books")), ProductEntity.class);
+
+    // Then
+    ResponseEntity<String> changed =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?page=0&size=10",
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            String.class);
+    assertEquals(HttpStatus.OK, changed.getStatusCode());
+    assertNotEquals(first.getHeaders().getETag(), changed.getHeaders().getETag());
+  }
+
+  @Test
+  void getProductFacets_CountsCategoriesAndPriceBuckets() {
+    // Given
+    createSampleProducts();
+
+    // When
+    ResponseEntity<ProductFacetsResponseDto> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/facets?active=true",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductFacetsResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2L, response.getBody().getCategories().get("Electronics"));
+    assertEquals(1L, response.getBody().getCategories().get("Books"));
+    PriceBucketDto cheapest = response.getBody().getPriceBuckets().get(0);
+    assertEquals(25.0, cheapest.getMin());
+    assertEquals(50.0, cheapest.getMax());
+    assertEquals(1, cheapest.getCount());
+
+    // A product write drops the cached counts
+    ProductRequestDto book = new ProductRequestDto();
+    book.setName("Another Book");
+    book.setPrice(30.0);
+    book.setCategory("Books");
+    book.setActive(true);
+    restTemplate.postForEntity(PRODUCTS_URL, new HttpEntity<>(book, headers), ProductEntity.class);
+
+    ResponseEntity<ProductFacetsResponseDto> updated =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/facets?active=true",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductFacetsResponseDto.class);
+    assertEquals(2L, updated.getBody().getCategories().get("Books"));
+    assertEquals(2, updated.getBody().getPriceBuckets().get(0).getCount());
+  }
+
+  @Test
+  void exportProducts_Ndjson_StreamsFilteredProducts() {
+    // Given
+    createSampleProducts();
+
+    // When
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/export?category=Electronics",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            String.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    List<String> rows = List.of(response.getBody().split("\n"));
+    assertEquals(
+        productRepository.findAll().stream()
+            .filter(p -> p.getCategory().equals("Electronics"))
+            .count(),
+        rows.size());
+    assertTrue(rows.stream().allMatch(row -> row.contains("\"category\":\"Electronics\"")));
+  }
+
+  @Test
+  void exportProducts_GzipCsv_WritesSelectedColumns() throws Exception {
+    // Given
+    createSampleProducts();
+
+    // When
+    ResponseEntity<byte[]> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/export?format=csv&gzip=true&fields=name,price",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            byte[].class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    String csv;
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+      csv = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    List<String> lines = List.of(csv.split("\n"));
+    assertEquals("id,name,price", lines.get(0));
+    assertEquals(productRepository.count() + 1, lines.size());
+  }
+
+  @Test
+  void getAllProducts_WithoutTotal_ReturnsSlice() {
+    // Given
+    createSampleProducts();
+
+    // When
+    ResponseEntity<PageResponse<ProductEntity>> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?page=0&size=2&withTotal=false",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<PageResponse<ProductEntity>>() {});
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2, response.getBody().getContent().size());
+    assertNull(response.getBody().getTotalElements());
+    assertNull(response.getBody().getTotalPages());
+    assertFalse(response.getBody().isLast());
+  }
+
+  @Test
+  void getAllProducts_WithFields_ReturnsOnlySelectedFields() {
+    // Given
+    createSampleProducts();
+
+    // When
+    ResponseEntity<PageResponse<ProductResponseDto>> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?page=0&size=10&fields=name,price",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<PageResponse<ProductResponseDto>>() {});
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertFalse(response.getBody().getContent().isEmpty());
+    for (ProductResponseDto product : response.getBody().getContent()) {
+      assertNotNull(product.getId());
+      assertNotNull(product.getName());
+      assertNotNull(product.getPrice());
+      assertNull(product.getDescription());
+      assertNull(product.getStockQuantity());
+    }
+  }
+
+  @Test
+  void getAllProducts_WithUnknownField_ReturnsBadRequest() {
+    // When
+    ResponseEntity<ErrorResponse> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?fields=name,secret",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ErrorResponse.class);
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+  }
+
+  @Test
+  void getAllProducts_CursorPaging_WalksAllPages() {
+    // Given
+    createSampleProducts();
+
+    // When
+    ResponseEntity<PageResponse<ProductEntity>> firstPage =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?size=2&after=",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<PageResponse<ProductEntity>>() {});
+    ResponseEntity<PageResponse<ProductEntity>> secondPage =
+        restTemplate.exchange(
+            PRODUCTS_URL + "?size=2&after=" + firstPage.getBody().getNextCursor(),
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            new ParameterizedTypeReference<PageResponse<ProductEntity>>() {});
+
+    // Then
+    assertEquals(HttpStatus.OK, firstPage.getStatusCode());
+    assertEquals(2, firstPage.getBody().getContent().size());
+    assertEquals("Different Product", firstPage.getBody().getContent().get(0).getName());
+    assertNull(firstPage.getBody().getTotalElements());
+    assertFalse(firstPage.getBody().isLast());
+    assertNotNull(firstPage.getBody().getNextCursor());
+
+    assertEquals(HttpStatus.OK, secondPage.getStatusCode());
+    assertEquals(1, secondPage.getBody().getContent().size());
+    assertEquals("Test Product 2", secondPage.getBody().getContent().get(0).getName());
+    assertTrue(secondPage.getBody().isLast());
+    assertNull(secondPage.getBody().getNextCursor());
+  }
+
   @Test
   void updateProduct_Success() {
     // Given
@@ -187,6 +858,52 @@ class ProductIntegrationTest {
     assertEquals(149.99, response.getBody().getPrice());
   }
 
+  @Test
+  void updateProduct_InvalidatesCachedProduct() {
+    // Given
+    ProductEntity savedProduct =
+        restTemplate
+            .postForEntity(
+                PRODUCTS_URL, new HttpEntity<>(productRequestDto, headers), ProductEntity.class)
+            .getBody();
+
+    // Read twice so the second lookup is served from the cache
+    for (int i = 0; i < 2; i++) {
+      restTemplate.exchange(
+          PRODUCTS_URL + "/" + savedProduct.getId(),
+          HttpMethod.GET,
+          new HttpEntity<>(headers),
+          ProductEntity.class);
+    }
+
+    productRequestDto.setName("Updated Product");
+    restTemplate.exchange(
+        PRODUCTS_URL + "/" + savedProduct.getId(),
+        HttpMethod.PUT,
+        new HttpEntity<>(productRequestDto, headers),
+        ProductEntity.class);
+
+    // When
+    ResponseEntity<ProductEntity> response =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/" + savedProduct.getId(),
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ProductEntity.class);
+    ResponseEntity<CacheStatsResponse> statsResponse =
+        restTemplate.exchange(
+            PRODUCTS_URL + "/cache/stats",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            CacheStatsResponse.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("Updated Product", response.getBody().getName());
+    assertEquals(HttpStatus.OK, statsResponse.getStatusCode());
+    assertTrue(statsResponse.getBody().getHitCount() > 0);
+  }
+
   //    @Test
   //    void partialUpdateProduct_Success() {
   //      // Given
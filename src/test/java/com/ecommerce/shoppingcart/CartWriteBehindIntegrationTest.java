@@ -0,0 +1,211 @@
+package com.ecommerce.shoppingcart;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ecommerce.auth.dto.JwtAuthResponse;
+import com.ecommerce.auth.dto.LoginRequest;
+import com.ecommerce.product.ProductEntity;
+import com.ecommerce.product.ProductRepository;
+import com.ecommerce.shoppingcart.dto.CartItemRequestDto;
+import com.ecommerce.shoppingcart.dto.ShoppingCartResponseDto;
+import com.ecommerce.users.Role;
+import com.ecommerce.users.UserRepository;
+import com.ecommerce.users.dto.UserRequestDto;
+import com.ecommerce.users.dto.UserResponseDto;
+import java.util.Date;
+import java.util.Objects;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+      "app.cart-store.write-behind.enabled=true",
+      "app.cart-store.flush-interval-ms=3600000"
+    })
+@Testcontainers
+class CartWriteBehindIntegrationTest {
+
+  @Container static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4.6");
+  private static final String BASE_URL = "/api/v1/ecommerce";
+  private static final String AUTH_URL = BASE_URL + "/auth";
+  private static final String CART_URL = BASE_URL + "/shopping-carts";
+
+  @DynamicPropertySource
+  static void setProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+  }
+
+  @Autowired private TestRestTemplate restTemplate;
+
+  @Autowired private CartWriteBehindStore cartStore;
+
+  @Autowired private MongoTemplate mongoTemplate;
+
+  @Autowired private UserRepository userRepository;
+
+  @Autowired private ProductRepository productRepository;
+
+  private HttpHeaders headers;
+  private String userId;
+  private String productId;
+
+  @BeforeEach
+  void setUp() {
+    mongoTemplate.remove(new Query(), "shopping_carts");
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+
+    UserRequestDto userRequestDto = new UserRequestDto();
+    userRequestDto.setEmail("admin@example.com");
+    userRequestDto.setPassword("Admin123#");
+    userRequestDto.setFirstName("Admin");
+    userRequestDto.setLastName("User");
+    userRequestDto.setRole(Role.ROLE_ADMIN);
+
+    ResponseEntity<UserResponseDto> registerResponse =
+        restTemplate.postForEntity(
+            AUTH_URL + "/register",
+            new HttpEntity<>(userRequestDto, headers),
+            UserResponseDto.class);
+    userId = registerResponse.getBody().getId();
+
+    LoginRequest loginRequest = new LoginRequest();
+    loginRequest.setEmail("admin@example.com");
+    loginRequest.setPassword("Admin123#");
+    ResponseEntity<JwtAuthResponse> loginResponse =
+        restTemplate.postForEntity(
+            AUTH_URL + "/login", new HttpEntity<>(loginRequest, headers), JwtAuthResponse.class);
+    headers.setBearerAuth(Objects.requireNonNull(loginResponse.getBody()).getAccessToken());
+
+    ProductEntity product = new ProductEntity();
+    product.setName("Test Product");
+    product.setPrice(99.99);
+    product.setCategory("Electronics");
+    product.setStockQuantity(10);
+    productId = productRepository.save(product).getId();
+  }
+
+  @Test
+  void addItemToCart_WriteBehind_ReadBeforeFlushAndPersistedAfter() {
+    // First create a cart
+    ResponseEntity<ShoppingCartResponseDto> createResponse =
+        restTemplate.postForEntity(
+            CART_URL + "?userId=" + userId,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+    String cartId = createResponse.getBody().getId();
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(3);
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.POST,
+        new HttpEntity<>(itemRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    // The change is served from memory before it reaches Mongo
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(3, response.getBody().getTotalItems());
+    assertNull(mongoTemplate.findById(cartId, ShoppingCartEntity.class));
+
+    cartStore.flush();
+
+    // Then
+    ShoppingCartEntity stored = mongoTemplate.findById(cartId, ShoppingCartEntity.class);
+    assertNotNull(stored);
+    assertEquals(3, stored.getLines().get(productId).getQuantity());
+  }
+
+  @Test
+  void addItemToUserCart_WriteBehind_AdoptsUnflushedCart() {
+    // A cart that so far only exists in memory
+    ResponseEntity<ShoppingCartResponseDto> createResponse =
+        restTemplate.postForEntity(
+            CART_URL + "?userId=" + userId,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+    String cartId = createResponse.getBody().getId();
+    assertNull(mongoTemplate.findById(cartId, ShoppingCartEntity.class));
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(2);
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/users/" + userId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    // Then the user's adds go to that cart, and the marker survives the next write-back
+    assertEquals(cartId, response.getBody().getId());
+    cartStore.flush();
+    ShoppingCartEntity stored = mongoTemplate.findById(cartId, ShoppingCartEntity.class);
+    assertEquals(userId, stored.getDefaultFor());
+    assertEquals(2, stored.getLines().get(productId).getQuantity());
+    assertEquals(1, mongoTemplate.count(new Query(), ShoppingCartEntity.class));
+  }
+
+  @Test
+  void getCart_WriteBehind_RepricingLeavesCartUnchanged() {
+    ResponseEntity<ShoppingCartResponseDto> createResponse =
+        restTemplate.postForEntity(
+            CART_URL + "?userId=" + userId,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+    String cartId = createResponse.getBody().getId();
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(2);
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.POST,
+        new HttpEntity<>(itemRequest, headers),
+        ShoppingCartResponseDto.class);
+    cartStore.flush();
+    Date lastModified = mongoTemplate.findById(cartId, ShoppingCartEntity.class).getLastModified();
+
+    // The price changes, the next read re-prices the line
+    ProductEntity product = productRepository.findById(productId).get();
+    product.setPrice(50.0);
+    product.setRevision(product.getRevision() + 1);
+    productRepository.save(product);
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    // Then the cart's TTL isn't pushed back and nothing is written
+    assertEquals(100.0, response.getBody().getTotalPrice());
+    assertEquals(lastModified, cartStore.find(cartId).get().getLastModified());
+    cartStore.flush();
+    assertEquals(
+        lastModified, mongoTemplate.findById(cartId, ShoppingCartEntity.class).getLastModified());
+  }
+}
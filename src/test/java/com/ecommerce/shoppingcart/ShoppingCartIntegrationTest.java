@@ -4,20 +4,47 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import com.ecommerce.auth.dto.JwtAuthResponse;
 import com.ecommerce.auth.dto.LoginRequest;
+import com.ecommerce.common.CacheStatsResponse;
+import com.ecommerce.inventory.InventoryService;
+import com.ecommerce.inventory.StockReservationEntity;
+import com.ecommerce.inventory.StockReservationRepository;
+import com.ecommerce.inventory.StockShardCounter;
+import com.ecommerce.inventory.StockShardEntity;
+import com.ecommerce.inventory.StockShardLockEntity;
+import com.ecommerce.inventory.dto.StockLevelResponseDto;
 import com.ecommerce.product.ProductEntity;
 import com.ecommerce.product.ProductRepository;
+import com.ecommerce.product.ProductRevisionIndex;
+import com.ecommerce.product.dto.ProductRequestDto;
+import com.ecommerce.product.dto.ProductResponseDto;
+import com.ecommerce.shoppingcart.dto.CartBatchRequestDto;
+import com.ecommerce.shoppingcart.dto.CartItemOperationDto;
 import com.ecommerce.shoppingcart.dto.CartItemRequestDto;
+import com.ecommerce.shoppingcart.dto.CartItemResponseDto;
+import com.ecommerce.shoppingcart.dto.CartOperationType;
+import com.ecommerce.shoppingcart.dto.CartSummaryResponseDto;
 import com.ecommerce.shoppingcart.dto.ShoppingCartResponseDto;
 import com.ecommerce.users.Role;
 import com.ecommerce.users.UserRepository;
 import com.ecommerce.users.dto.UserRequestDto;
 import com.ecommerce.users.dto.UserResponseDto;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.*;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
@@ -35,10 +62,13 @@ class ShoppingCartIntegrationTest {
   private static final String USERS_URL = BASE_URL + "/users";
   private static final String CART_URL = BASE_URL + "/shopping-carts";
   private static final String PRODUCTS_URL = BASE_URL + "/products";
+  private static final String INVENTORY_URL = BASE_URL + "/inventory";
 
   @DynamicPropertySource
   static void setProperties(DynamicPropertyRegistry registry) {
     registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+    // Changes reach the change feed right away instead of after the settle delay
+    registry.add("app.product-changes.settle-ms", () -> "0");
   }
 
   @Autowired private TestRestTemplate restTemplate;
@@ -49,6 +79,16 @@ class ShoppingCartIntegrationTest {
 
   @Autowired private ProductRepository productRepository;
 
+  @Autowired private StockReservationRepository reservationRepository;
+
+  @Autowired private InventoryService inventoryService;
+
+  @Autowired private StockShardCounter stockShardCounter;
+
+  @Autowired private ProductRevisionIndex productRevisionIndex;
+
+  @Autowired private MongoTemplate mongoTemplate;
+
   private HttpHeaders headers;
   private String userId;
   private String productId;
@@ -58,6 +98,7 @@ class ShoppingCartIntegrationTest {
     cartRepository.deleteAll();
     userRepository.deleteAll();
     productRepository.deleteAll();
+    reservationRepository.deleteAll();
 
     headers = new HttpHeaders();
     headers.setContentType(MediaType.APPLICATION_JSON);
@@ -199,6 +240,36 @@ class ShoppingCartIntegrationTest {
     assertTrue(response.getBody().getItems().isEmpty());
   }
 
+  @Test
+  void removeItemFromCart_ItemNotInCart_ReturnsNotFound() {
+    String cartId = createTestCart();
+
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items/" + productId,
+            HttpMethod.DELETE,
+            new HttpEntity<>(headers),
+            String.class);
+
+    assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    assertTrue(response.getBody().contains("Item not found in cart"));
+  }
+
+  @Test
+  void removeItemFromCart_ProductIdNotAnObjectId_ReturnsBadRequest() {
+    String cartId = createTestCartWithItem();
+
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items/quantity.x",
+            HttpMethod.DELETE,
+            new HttpEntity<>(headers),
+            String.class);
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals(2, cartRepository.findById(cartId).get().getLines().get(productId).getQuantity());
+  }
+
   @Test
   void clearCart_Success() {
     // First create a cart with an item
@@ -330,6 +401,836 @@ class ShoppingCartIntegrationTest {
     assertEquals(7, getResponse.getBody().getItems().get(0).getQuantity());
   }
 
+  @Test
+  void addItemToCart_ConcurrentAdds_NoLostUpdates() throws Exception {
+    // First create a cart
+    String cartId = createTestCart();
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(1);
+
+    // Add the same product from several clients at once
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    List<Future<ResponseEntity<ShoppingCartResponseDto>>> responses = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      responses.add(
+          executor.submit(
+              () ->
+                  restTemplate.exchange(
+                      CART_URL + "/" + cartId + "/items",
+                      HttpMethod.POST,
+                      new HttpEntity<>(itemRequest, headers),
+                      ShoppingCartResponseDto.class)));
+    }
+    for (Future<ResponseEntity<ShoppingCartResponseDto>> response : responses) {
+      assertEquals(HttpStatus.OK, response.get().getStatusCode());
+    }
+    executor.shutdown();
+
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(1, response.getBody().getItems().size());
+    assertEquals(5, response.getBody().getItems().get(0).getQuantity());
+  }
+
+  @Test
+  void addItemToCart_ReservesStock_ReleasedOnRemove() {
+    // First create a cart
+    String cartId = createTestCart();
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(3);
+
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.POST,
+        new HttpEntity<>(itemRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    // Then the units are held for this cart
+    assertEquals(7, productRepository.findById(productId).get().getStockQuantity());
+
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items/" + productId,
+        HttpMethod.DELETE,
+        new HttpEntity<>(headers),
+        ShoppingCartResponseDto.class);
+
+    // Then they are back in stock
+    assertEquals(10, productRepository.findById(productId).get().getStockQuantity());
+    assertTrue(reservationRepository.findByCartId(cartId).isEmpty());
+  }
+
+  @Test
+  void addItemToCart_NegativeQuantity_Rejected() {
+    String cartId = createTestCart();
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(-50);
+
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            String.class);
+
+    // Then no stock is created
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals(10, productRepository.findById(productId).get().getStockQuantity());
+    assertTrue(reservationRepository.findByCartId(cartId).isEmpty());
+  }
+
+  @Test
+  void updateItemQuantity_MovesHoldByDifference() {
+    String cartId = createTestCartWithItem();
+
+    CartItemRequestDto updateRequest = new CartItemRequestDto();
+    updateRequest.setProductId(productId);
+    updateRequest.setQuantity(5);
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.PUT,
+        new HttpEntity<>(updateRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    assertEquals(5, productRepository.findById(productId).get().getStockQuantity());
+    assertEquals(5, reservationRepository.findByCartId(cartId).get(0).getQuantity());
+
+    updateRequest.setQuantity(1);
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.PUT,
+        new HttpEntity<>(updateRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    assertEquals(9, productRepository.findById(productId).get().getStockQuantity());
+    assertEquals(1, reservationRepository.findByCartId(cartId).get(0).getQuantity());
+  }
+
+  @Test
+  void addItemToCart_ShardedStock_ReservesFromShards() {
+    // First split the product's stock over shards
+    ResponseEntity<StockLevelResponseDto> shardResponse =
+        restTemplate.exchange(
+            INVENTORY_URL + "/" + productId + "/shards?count=4",
+            HttpMethod.PUT,
+            new HttpEntity<>(headers),
+            StockLevelResponseDto.class);
+    assertEquals(HttpStatus.OK, shardResponse.getStatusCode());
+    assertEquals(4, shardResponse.getBody().getStockShards());
+    assertEquals(10, shardResponse.getBody().getStockQuantity());
+
+    // Add more than any single shard holds
+    String cartId = createTestCart();
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(4);
+
+    ResponseEntity<ShoppingCartResponseDto> addResponse =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+    assertEquals(HttpStatus.OK, addResponse.getStatusCode());
+
+    ResponseEntity<StockLevelResponseDto> stockResponse =
+        restTemplate.exchange(
+            INVENTORY_URL + "/" + productId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            StockLevelResponseDto.class);
+    assertEquals(6, stockResponse.getBody().getStockQuantity());
+
+    // Folding the shards back leaves the remaining stock on the product
+    restTemplate.exchange(
+        INVENTORY_URL + "/" + productId + "/shards?count=0",
+        HttpMethod.PUT,
+        new HttpEntity<>(headers),
+        StockLevelResponseDto.class);
+    ProductEntity product = productRepository.findById(productId).get();
+    assertEquals(0, product.getStockShards());
+    assertEquals(6, product.getStockQuantity());
+  }
+
+  @Test
+  void addItemToCart_ShardedElsewhere_TakesFromShards() {
+    // The first add caches the product as unsharded
+    String cartId = createTestCartWithItem();
+
+    // Another instance shards the product, this node's cache is not told
+    stockShardCounter.enable(productId, 4);
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(2);
+    ResponseEntity<ShoppingCartResponseDto> addResponse =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    assertEquals(HttpStatus.OK, addResponse.getStatusCode());
+    assertEquals(4, addResponse.getBody().getItems().get(0).getQuantity());
+    assertEquals(6, stockShardCounter.total(productId));
+  }
+
+  @Test
+  void rebalance_AfterDisable_WritesNoShards() {
+    stockShardCounter.enable(productId, 4);
+    stockShardCounter.disable(productId);
+
+    // A rebalance that read the old shard count runs after the disable
+    stockShardCounter.rebalance(productId, 4);
+
+    assertFalse(
+        mongoTemplate.exists(
+            Query.query(Criteria.where("productId").is(productId)), StockShardEntity.class));
+    assertEquals(10, productRepository.findById(productId).get().getStockQuantity());
+  }
+
+  @Test
+  void rebalance_LeavesProductVersionAlone() {
+    stockShardCounter.enable(productId, 4);
+    Long version = productRepository.findById(productId).get().getVersion();
+
+    stockShardCounter.rebalance(productId, 4);
+
+    assertEquals(version, productRepository.findById(productId).get().getVersion());
+    assertFalse(
+        mongoTemplate.exists(
+            Query.query(Criteria.where("id").is(productId)), StockShardLockEntity.class));
+  }
+
+  @Test
+  void setStockShards_WhileRebalancing_ReturnsConflict() {
+    // Another instance holds the lease
+    StockShardLockEntity lock = new StockShardLockEntity();
+    lock.setId(productId);
+    lock.setHolder("other-instance");
+    lock.setLockedUntil(new Date(System.currentTimeMillis() + 30000));
+    mongoTemplate.insert(lock);
+
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            INVENTORY_URL + "/" + productId + "/shards?count=4",
+            HttpMethod.PUT,
+            new HttpEntity<>(headers),
+            String.class);
+
+    assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    assertEquals(0, productRepository.findById(productId).get().getStockShards());
+  }
+
+  @Test
+  void releaseExpiredReservations_ReturnsStock() {
+    // First create a cart with an item
+    String cartId = createTestCartWithItem();
+    int heldStock = productRepository.findById(productId).get().getStockQuantity();
+
+    // Let the hold run out
+    StockReservationEntity reservation = reservationRepository.findByCartId(cartId).get(0);
+    reservation.setExpiresAt(new Date(System.currentTimeMillis() - 1000));
+    reservationRepository.save(reservation);
+
+    inventoryService.releaseExpiredReservations();
+
+    // Then
+    assertEquals(
+        heldStock + reservation.getQuantity(),
+        productRepository.findById(productId).get().getStockQuantity());
+    assertTrue(reservationRepository.findByCartId(cartId).isEmpty());
+  }
+
+  @Test
+  void applyBatch_MixedOperations_AppliedTogether() {
+    // First create a cart with an item
+    String cartId = createTestCartWithItem();
+
+    ProductEntity otherProduct = new ProductEntity();
+    otherProduct.setName("Other Product");
+    otherProduct.setPrice(10.0);
+    otherProduct.setCategory("Books");
+    otherProduct.setStockQuantity(10);
+    String otherProductId = productRepository.save(otherProduct).getId();
+
+    CartBatchRequestDto batchRequest = new CartBatchRequestDto();
+    batchRequest.setOperations(
+        List.of(
+            operation(CartOperationType.ADD, otherProductId, 2),
+            operation(CartOperationType.UPDATE, productId, 4),
+            operation(CartOperationType.ADD, otherProductId, 1)));
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items/batch",
+            HttpMethod.POST,
+            new HttpEntity<>(batchRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2, response.getBody().getItems().size());
+    assertEquals(7, response.getBody().getTotalItems());
+    assertEquals(6, productRepository.findById(productId).get().getStockQuantity());
+    assertEquals(7, productRepository.findById(otherProductId).get().getStockQuantity());
+  }
+
+  @Test
+  void applyBatch_OneLineShort_ReturnsStockTakenForOthers() {
+    String cartId = createTestCart();
+
+    ProductEntity otherProduct = new ProductEntity();
+    otherProduct.setName("Other Product");
+    otherProduct.setPrice(10.0);
+    otherProduct.setCategory("Books");
+    otherProduct.setStockQuantity(10);
+    String otherProductId = productRepository.save(otherProduct).getId();
+
+    CartBatchRequestDto batchRequest = new CartBatchRequestDto();
+    batchRequest.setOperations(
+        List.of(
+            operation(CartOperationType.ADD, otherProductId, 3),
+            operation(CartOperationType.ADD, productId, 20)));
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items/batch",
+            HttpMethod.POST,
+            new HttpEntity<>(batchRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    // Then the line that fitted had its units handed back and nothing is held
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals(10, productRepository.findById(otherProductId).get().getStockQuantity());
+    assertEquals(10, productRepository.findById(productId).get().getStockQuantity());
+    assertTrue(reservationRepository.findByCartId(cartId).isEmpty());
+    assertFalse(
+        mongoTemplate.exists(
+            Query.query(Criteria.where("pendingTakes").exists(true).ne(List.of())),
+            ProductEntity.class));
+  }
+
+  @Test
+  void applyBatch_InsufficientStock_AppliesNothing() {
+    // First create a cart with an item
+    String cartId = createTestCartWithItem();
+    int stockBefore = productRepository.findById(productId).get().getStockQuantity();
+
+    CartBatchRequestDto batchRequest = new CartBatchRequestDto();
+    batchRequest.setOperations(
+        List.of(
+            operation(CartOperationType.REMOVE, productId, null),
+            operation(CartOperationType.ADD, productId, 20)));
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/items/batch",
+            HttpMethod.POST,
+            new HttpEntity<>(batchRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    ShoppingCartEntity cart = cartRepository.findById(cartId).get();
+    assertEquals(1, cart.getLines().size());
+    assertEquals(stockBefore, productRepository.findById(productId).get().getStockQuantity());
+  }
+
+  @Test
+  void addItemToUserCart_NoCart_CreatesCartOnFirstAdd() {
+    // Registration no longer creates a cart
+    assertTrue(cartRepository.findAll().isEmpty());
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(1);
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> firstAdd =
+        restTemplate.exchange(
+            CART_URL + "/users/" + userId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+    ResponseEntity<ShoppingCartResponseDto> secondAdd =
+        restTemplate.exchange(
+            CART_URL + "/users/" + userId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, firstAdd.getStatusCode());
+    assertEquals(firstAdd.getBody().getId(), secondAdd.getBody().getId());
+    assertEquals(2, secondAdd.getBody().getTotalItems());
+    assertEquals(1, cartRepository.findAll().size());
+    assertNotNull(cartRepository.findById(secondAdd.getBody().getId()).get().getLastModified());
+  }
+
+  @Test
+  void addItemToUserCart_ConcurrentFirstAdds_CreateOneCart() throws Exception {
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(1);
+
+    // The user has no cart yet and several clients add at once
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    List<Future<ResponseEntity<ShoppingCartResponseDto>>> responses = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      responses.add(
+          executor.submit(
+              () ->
+                  restTemplate.exchange(
+                      CART_URL + "/users/" + userId + "/items",
+                      HttpMethod.POST,
+                      new HttpEntity<>(itemRequest, headers),
+                      ShoppingCartResponseDto.class)));
+    }
+    for (Future<ResponseEntity<ShoppingCartResponseDto>> response : responses) {
+      assertEquals(HttpStatus.OK, response.get().getStatusCode());
+    }
+    executor.shutdown();
+
+    // Then
+    List<ShoppingCartEntity> carts = cartRepository.findAll();
+    assertEquals(1, carts.size());
+    assertEquals(5, carts.get(0).getLines().get(productId).getQuantity());
+  }
+
+  @Test
+  void addItemToUserCart_SeveralCarts_AddsToLatestCart() {
+    String olderCartId = createTestCart();
+    String latestCartId = createTestCartWithItem();
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(1);
+
+    ResponseEntity<ShoppingCartResponseDto> firstAdd =
+        restTemplate.exchange(
+            CART_URL + "/users/" + userId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    // A newer cart doesn't move the default once it is set
+    createTestCart();
+    ResponseEntity<ShoppingCartResponseDto> secondAdd =
+        restTemplate.exchange(
+            CART_URL + "/users/" + userId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    assertEquals(latestCartId, firstAdd.getBody().getId());
+    assertEquals(latestCartId, secondAdd.getBody().getId());
+    assertEquals(4, secondAdd.getBody().getTotalItems());
+    assertTrue(cartRepository.findById(olderCartId).get().getLines().isEmpty());
+  }
+
+  @Test
+  void addItemToUserCart_InvalidQuantity_Rejected() {
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(0);
+
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            CART_URL + "/users/" + userId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            String.class);
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertTrue(cartRepository.findAll().isEmpty());
+  }
+
+  @Test
+  void addItemToUserCart_ProductLookedUpOncePerRequest() {
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(1);
+    CacheStatsResponse before = getProductCacheStats();
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/users/" + userId + "/items",
+            HttpMethod.POST,
+            new HttpEntity<>(itemRequest, headers),
+            ShoppingCartResponseDto.class);
+
+    // Then one lookup for the cart line and one for the stock mode of the reservation
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    CacheStatsResponse after = getProductCacheStats();
+    assertEquals(
+        before.getHitCount() + before.getMissCount() + 2,
+        after.getHitCount() + after.getMissCount());
+  }
+
+  @Test
+  void getCart_SnapshotCurrent_SkipsProductLookup() {
+    // First create a cart with an item
+    String cartId = createTestCartWithItem();
+    CacheStatsResponse before = getProductCacheStats();
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("Test Product", response.getBody().getItems().get(0).getProductName());
+    assertEquals(199.98, response.getBody().getTotalPrice());
+    CacheStatsResponse after = getProductCacheStats();
+    assertEquals(
+        before.getHitCount() + before.getMissCount(), after.getHitCount() + after.getMissCount());
+  }
+
+  @Test
+  void getCart_ProductPriceChanged_RepricesLine() {
+    // First create a cart with an item
+    String cartId = createTestCartWithItem();
+
+    ProductRequestDto priceUpdate = new ProductRequestDto();
+    priceUpdate.setName("Test Product");
+    priceUpdate.setPrice(50.0);
+    priceUpdate.setStockQuantity(8);
+    priceUpdate.setCategory("Electronics");
+    restTemplate.exchange(
+        PRODUCTS_URL + "/" + productId,
+        HttpMethod.PUT,
+        new HttpEntity<>(priceUpdate, headers),
+        ProductResponseDto.class);
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(50.0, response.getBody().getItems().get(0).getProductPrice());
+    assertEquals(100.0, response.getBody().getTotalPrice());
+    assertEquals(
+        5000L, cartRepository.findById(cartId).get().getLines().get(productId).getUnitPriceMinor());
+  }
+
+  @Test
+  void getCart_PriceChangedOnOtherInstance_RepricedAfterSync() {
+    String cartId = createTestCartWithItem();
+
+    // Another instance changes the price, no local save event reaches this node
+    mongoTemplate.updateFirst(
+        Query.query(Criteria.where("id").is(productId)),
+        new Update()
+            .set("priceMinor", 5000L)
+            .set("updatedAt", new Date())
+            .inc("version", 1L)
+            .inc("revision", 1L),
+        ProductEntity.class);
+    productRevisionIndex.syncFromChangeFeed();
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(50.0, response.getBody().getItems().get(0).getProductPrice());
+    assertEquals(
+        5000L, cartRepository.findById(cartId).get().getLines().get(productId).getUnitPriceMinor());
+  }
+
+  @Test
+  void getCart_StockMovedByOtherCarts_SnapshotKept() {
+    String cartId = createTestCartWithItem();
+    restTemplate.exchange(
+        CART_URL + "/" + cartId, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    Date lastModified = cartRepository.findById(cartId).get().getLastModified();
+
+    // Reservations from another cart move the product's stock and version, and a node reading
+    // the index fresh from Mongo sees them
+    createTestCartWithItem();
+    productRevisionIndex.rebuild();
+
+    // When
+    restTemplate.exchange(
+        CART_URL + "/" + cartId, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+    // Then
+    assertEquals(lastModified, cartRepository.findById(cartId).get().getLastModified());
+  }
+
+  @Test
+  void getCart_ProductCreatedOnOtherInstance_SnapshotKeptCurrent() {
+    // A product written straight to Mongo, unknown to this node's revision index
+    Document remote =
+        new Document("name", "Remote Product")
+            .append("category", "Books")
+            .append("priceMinor", 1200L)
+            .append("stockQuantity", 5)
+            .append("stockShards", 0)
+            .append("active", true)
+            .append("version", 0L)
+            .append("createdAt", new Date())
+            .append("updatedAt", new Date());
+    mongoTemplate.getCollection("products").insertOne(remote);
+    String remoteId = remote.getObjectId("_id").toHexString();
+
+    String cartId = createTestCart();
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(remoteId);
+    itemRequest.setQuantity(1);
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.POST,
+        new HttpEntity<>(itemRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    // Once looked up in Mongo the revision is known, reading the cart writes nothing back
+    restTemplate.exchange(
+        CART_URL + "/" + cartId, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    Date lastModified = cartRepository.findById(cartId).get().getLastModified();
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    assertEquals(12.0, response.getBody().getItems().get(0).getProductPrice());
+    assertEquals(
+        mongoTemplate.findById(remoteId, ProductEntity.class).getRevision(),
+        productRevisionIndex.getAll(List.of(remoteId)).get(remoteId));
+    assertEquals(lastModified, cartRepository.findById(cartId).get().getLastModified());
+  }
+
+  @Test
+  void getCartSummary_Unchanged_ReturnsNotModified() {
+    // First create a cart with an item
+    String cartId = createTestCartWithItem();
+
+    ResponseEntity<CartSummaryResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/summary",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            CartSummaryResponseDto.class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2, response.getBody().getTotalItems());
+    assertEquals(199.98, response.getBody().getTotalPrice());
+    String eTag = response.getHeaders().getETag();
+    assertNotNull(eTag);
+
+    // When polled again with the same ETag
+    HttpHeaders conditionalHeaders = new HttpHeaders();
+    conditionalHeaders.putAll(headers);
+    conditionalHeaders.setIfNoneMatch(eTag);
+    ResponseEntity<CartSummaryResponseDto> notModified =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/summary",
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            CartSummaryResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+
+    // A change to the cart produces a new ETag
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(productId);
+    itemRequest.setQuantity(1);
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.POST,
+        new HttpEntity<>(itemRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    ResponseEntity<CartSummaryResponseDto> changed =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/summary",
+            HttpMethod.GET,
+            new HttpEntity<>(conditionalHeaders),
+            CartSummaryResponseDto.class);
+    assertEquals(HttpStatus.OK, changed.getStatusCode());
+    assertEquals(3, changed.getBody().getTotalItems());
+  }
+
+  @Test
+  void getCartSummary_PriceChangedAndProductDeleted_MatchesFullCartOnceRead() {
+    String cartId = createTestCartWithItem();
+
+    ProductEntity otherProduct = new ProductEntity();
+    otherProduct.setName("Other Product");
+    otherProduct.setPrice(10.0);
+    otherProduct.setCategory("Books");
+    otherProduct.setStockQuantity(10);
+    String otherProductId = productRepository.save(otherProduct).getId();
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(otherProductId);
+    itemRequest.setQuantity(1);
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.POST,
+        new HttpEntity<>(itemRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    // The price of one line changes and the other product goes away
+    ProductRequestDto priceUpdate = new ProductRequestDto();
+    priceUpdate.setName("Test Product");
+    priceUpdate.setPrice(50.0);
+    priceUpdate.setStockQuantity(8);
+    priceUpdate.setCategory("Electronics");
+    restTemplate.exchange(
+        PRODUCTS_URL + "/" + productId,
+        HttpMethod.PUT,
+        new HttpEntity<>(priceUpdate, headers),
+        ProductResponseDto.class);
+    productRepository.deleteById(otherProductId);
+
+    // When the summary is read before and after the full cart
+    ResponseEntity<CartSummaryResponseDto> before =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/summary",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            CartSummaryResponseDto.class);
+    ResponseEntity<ShoppingCartResponseDto> cart =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+    ResponseEntity<CartSummaryResponseDto> after =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId + "/summary",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            CartSummaryResponseDto.class);
+
+    // Then the summary keeps the snapshot prices until the full cart re-priced them
+    assertEquals(209.98, before.getBody().getTotalPrice());
+    assertEquals(100.0, after.getBody().getTotalPrice());
+    assertEquals(cart.getBody().getTotalPrice(), after.getBody().getTotalPrice());
+    assertEquals(cart.getBody().getTotalItems(), after.getBody().getTotalItems());
+  }
+
+  @Test
+  void getCart_LegacyItemsArray_MigratedOnRead() {
+    // A cart stored with the former items array layout
+    Document legacyCart =
+        new Document("userId", userId)
+            .append("items", List.of(new Document("productId", productId).append("quantity", 2)));
+    mongoTemplate.insert(legacyCart, "shopping_carts");
+    String cartId = legacyCart.getObjectId("_id").toHexString();
+
+    // When
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(1, response.getBody().getItems().size());
+    assertEquals(2, response.getBody().getItems().get(0).getQuantity());
+
+    Document stored = mongoTemplate.findById(cartId, Document.class, "shopping_carts");
+    assertFalse(stored.containsKey("items"));
+    assertEquals(
+        2, stored.get("lines", Document.class).get(productId, Document.class).get("quantity"));
+  }
+
+  @Test
+  void getCart_DeletedProduct_FlagsItemUnavailable() {
+    // First create a cart with an item
+    String cartId = createTestCartWithItem();
+
+    // Add a second product to the cart
+    ProductEntity otherProduct = new ProductEntity();
+    otherProduct.setName("Other Product");
+    otherProduct.setPrice(10.0);
+    otherProduct.setCategory("Books");
+    otherProduct.setStockQuantity(10);
+    String otherProductId = productRepository.save(otherProduct).getId();
+
+    CartItemRequestDto itemRequest = new CartItemRequestDto();
+    itemRequest.setProductId(otherProductId);
+    itemRequest.setQuantity(1);
+
+    restTemplate.exchange(
+        CART_URL + "/" + cartId + "/items",
+        HttpMethod.POST,
+        new HttpEntity<>(itemRequest, headers),
+        ShoppingCartResponseDto.class);
+
+    // Remove the first product from the catalog
+    restTemplate.exchange(
+        PRODUCTS_URL + "/" + productId, HttpMethod.DELETE, new HttpEntity<>(headers), Void.class);
+
+    ResponseEntity<ShoppingCartResponseDto> response =
+        restTemplate.exchange(
+            CART_URL + "/" + cartId,
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            ShoppingCartResponseDto.class);
+
+    // Then
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertNotNull(response.getBody());
+    assertEquals(2, response.getBody().getItems().size());
+    for (CartItemResponseDto item : response.getBody().getItems()) {
+      assertEquals(!item.getProductId().equals(productId), item.isAvailable());
+    }
+    assertEquals(10.0, response.getBody().getTotalPrice());
+  }
+
+  private CacheStatsResponse getProductCacheStats() {
+    return restTemplate
+        .exchange(
+            PRODUCTS_URL + "/cache/stats",
+            HttpMethod.GET,
+            new HttpEntity<>(headers),
+            CacheStatsResponse.class)
+        .getBody();
+  }
+
+  private CartItemOperationDto operation(
+      CartOperationType type, String productId, Integer quantity) {
+    CartItemOperationDto operation = new CartItemOperationDto();
+    operation.setType(type);
+    operation.setProductId(productId);
+    operation.setQuantity(quantity);
+    return operation;
+  }
+
   private String createTestCart() {
     ResponseEntity<ShoppingCartResponseDto> response =
         restTemplate.postForEntity(
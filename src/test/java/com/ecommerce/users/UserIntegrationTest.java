@@ -5,12 +5,19 @@ import static org.junit.jupiter.api.Assertions.*;
 import com.ecommerce.auth.dto.JwtAuthResponse;
 import com.ecommerce.auth.dto.LoginRequest;
 import com.ecommerce.common.PageResponse;
+import com.ecommerce.security.JwtTokenProvider;
 import com.ecommerce.users.dto.UserRequestDto;
 import com.ecommerce.users.dto.UserResponseDto;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import java.util.Date;
 import java.util.Objects;
+import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
@@ -21,7 +28,9 @@ import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "app.jwt.stateless-principal=true")
 @Testcontainers
 class UserIntegrationTest {
 
@@ -39,6 +48,11 @@ class UserIntegrationTest {
 
   @Autowired private UserRepository userRepository;
 
+  @Autowired private JwtTokenProvider jwtTokenProvider;
+
+  @Value("${app.jwt.secret}")
+  private String jwtSecret;
+
   private UserRequestDto adminRequestDto;
   private UserRequestDto customerRequestDto;
   private HttpHeaders headers;
@@ -147,6 +161,36 @@ class UserIntegrationTest {
     assertEquals(2, response.getBody().getTotalElements()); // Admin + Customer
   }
 
+  @Test
+  void getAllUsers_CursorPaging_Success() {
+    // Register a customer
+    restTemplate.postForEntity(
+        AUTH_URL + "/register",
+        new HttpEntity<>(customerRequestDto, headers),
+        UserResponseDto.class);
+
+    ResponseEntity<PageResponse<UserResponseDto>> firstPage =
+        restTemplate.exchange(
+            USERS_URL + "?size=1&after=",
+            HttpMethod.GET,
+            new HttpEntity<>(adminHeaders),
+            new ParameterizedTypeReference<PageResponse<UserResponseDto>>() {});
+    ResponseEntity<PageResponse<UserResponseDto>> secondPage =
+        restTemplate.exchange(
+            USERS_URL + "?size=1&after=" + firstPage.getBody().getNextCursor(),
+            HttpMethod.GET,
+            new HttpEntity<>(adminHeaders),
+            new ParameterizedTypeReference<PageResponse<UserResponseDto>>() {});
+
+    assertEquals(HttpStatus.OK, firstPage.getStatusCode());
+    assertEquals(adminRequestDto.getEmail(), firstPage.getBody().getContent().get(0).getEmail());
+    assertFalse(firstPage.getBody().isLast());
+    assertEquals(HttpStatus.OK, secondPage.getStatusCode());
+    assertEquals(
+        customerRequestDto.getEmail(), secondPage.getBody().getContent().get(0).getEmail());
+    assertTrue(secondPage.getBody().isLast());
+  }
+
   @Test
   void getAllUsers_CustomerAccess_Forbidden() {
     // Register and login as customer
@@ -254,6 +298,123 @@ class UserIntegrationTest {
     assertFalse(userRepository.findById(userId).isPresent());
   }
 
+  @Test
+  void deleteUser_RevokesExistingToken() {
+    // Register and login as customer
+    ResponseEntity<UserResponseDto> createResponse =
+        restTemplate.postForEntity(
+            AUTH_URL + "/register",
+            new HttpEntity<>(customerRequestDto, headers),
+            UserResponseDto.class);
+    String userId = Objects.requireNonNull(createResponse.getBody()).getId();
+
+    LoginRequest loginRequest = new LoginRequest();
+    loginRequest.setEmail(customerRequestDto.getEmail());
+    loginRequest.setPassword(customerRequestDto.getPassword());
+
+    ResponseEntity<JwtAuthResponse> loginResponse =
+        restTemplate.postForEntity(
+            AUTH_URL + "/login",
+            new HttpEntity<>(loginRequest, new HttpHeaders()),
+            JwtAuthResponse.class);
+
+    HttpHeaders customerHeaders = new HttpHeaders();
+    customerHeaders.setBearerAuth(loginResponse.getBody().getAccessToken());
+
+    // Authenticated customer reaches the cart endpoint
+    ResponseEntity<String> beforeDelete =
+        restTemplate.exchange(
+            BASE_URL + "/shopping-carts/nonexistentId",
+            HttpMethod.GET,
+            new HttpEntity<>(customerHeaders),
+            String.class);
+    assertEquals(HttpStatus.NOT_FOUND, beforeDelete.getStatusCode());
+
+    // Delete customer using admin token
+    restTemplate.exchange(
+        USERS_URL + "/" + userId, HttpMethod.DELETE, new HttpEntity<>(adminHeaders), Void.class);
+
+    // The still unexpired token no longer authenticates
+    ResponseEntity<String> afterDelete =
+        restTemplate.exchange(
+            BASE_URL + "/shopping-carts/nonexistentId",
+            HttpMethod.GET,
+            new HttpEntity<>(customerHeaders),
+            String.class);
+    assertEquals(HttpStatus.FORBIDDEN, afterDelete.getStatusCode());
+  }
+
+  @Test
+  void verifiedToken_SecondCallServedFromCache() {
+    String token = adminHeaders.getFirst(HttpHeaders.AUTHORIZATION).substring("Bearer ".length());
+
+    Optional<Claims> first = jwtTokenProvider.parseAndVerify(token);
+    Optional<Claims> second = jwtTokenProvider.parseAndVerify(token);
+
+    assertTrue(first.isPresent());
+    assertSame(first.get(), second.get());
+
+    // The cached token keeps authenticating requests
+    for (int i = 0; i < 2; i++) {
+      ResponseEntity<String> response =
+          restTemplate.exchange(
+              USERS_URL, HttpMethod.GET, new HttpEntity<>(adminHeaders), String.class);
+      assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+  }
+
+  @Test
+  void verifiedToken_RejectedOnceExpired() throws InterruptedException {
+    Date expiresAt = new Date(System.currentTimeMillis() + 1500);
+    String token =
+        Jwts.builder()
+            .setSubject("expiring-user")
+            .claim("roles", Role.ROLE_ADMIN.name())
+            .claim("email", "expiring@example.com")
+            .setIssuedAt(new Date())
+            .setExpiration(expiresAt)
+            .signWith(Keys.hmacShaKeyFor(jwtSecret.getBytes()))
+            .compact();
+
+    // Verified and cached while still valid
+    assertTrue(jwtTokenProvider.parseAndVerify(token).isPresent());
+
+    Thread.sleep(expiresAt.getTime() - System.currentTimeMillis() + 500);
+
+    // The cache entry lapsed at exp and a fresh parse rejects the token
+    assertTrue(jwtTokenProvider.parseAndVerify(token).isEmpty());
+
+    HttpHeaders expiredHeaders = new HttpHeaders();
+    expiredHeaders.setBearerAuth(token);
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            USERS_URL, HttpMethod.GET, new HttpEntity<>(expiredHeaders), String.class);
+    assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+  }
+
+  @Test
+  void verifiedToken_TamperedSignatureRejected() {
+    String token = adminHeaders.getFirst(HttpHeaders.AUTHORIZATION).substring("Bearer ".length());
+    assertTrue(jwtTokenProvider.parseAndVerify(token).isPresent());
+
+    // Same header and payload as the cached token, one signature character changed
+    int signatureStart = token.lastIndexOf('.') + 1;
+    char original = token.charAt(signatureStart);
+    String tampered =
+        token.substring(0, signatureStart)
+            + (original == 'A' ? 'B' : 'A')
+            + token.substring(signatureStart + 1);
+
+    assertTrue(jwtTokenProvider.parseAndVerify(tampered).isEmpty());
+
+    HttpHeaders tamperedHeaders = new HttpHeaders();
+    tamperedHeaders.setBearerAuth(tampered);
+    ResponseEntity<String> response =
+        restTemplate.exchange(
+            USERS_URL, HttpMethod.GET, new HttpEntity<>(tamperedHeaders), String.class);
+    assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+  }
+
   @Test
   void getUserById_NotFound() {
     ResponseEntity<UserResponseDto> response =